@@ -0,0 +1,349 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.blackducksoftware.protex.plugin.tasks.IgnoreMatcher;
+
+/**
+ * Continuously analyzes a directory as it changes, intended for developer workstations. The directory is watched
+ * recursively; once changes stop arriving for the quiet period an incremental (non-forced) analysis is run in the
+ * background using {@link BuildToolIntegrationService#analyze(String, File, boolean)}. Changes made while an analysis
+ * is running result in at most one more analysis once it completes. Results are reported to the listeners registered
+ * with the service, registering a {@code FingerprintCache} as well avoids running {@code bdstool} when a save did not
+ * actually change anything.
+ * <p>
+ * When watching a {@link ProtexProject} its ignore patterns are applied to the watch as well as to the analysis:
+ * ignored directories (e.g. {@code target/} or {@code node_modules/}) are not watched and changes to ignored files do
+ * not trigger an analysis. Directories which cannot be watched do not stop the watcher, the most recent failure is
+ * available from {@link #getLastFailure()}.
+ * <p>
+ * An analysis is run as soon as the watcher is started.
+ *
+ * @author jgustie
+ */
+public final class AnalysisWatcher implements Closeable {
+
+    private final BuildToolIntegrationService service;
+
+    private final String externalId;
+
+    /**
+     * The project to analyze, {@code null} if the project is only known by its external identifier.
+     */
+    private final ProtexProject project;
+
+    private final File directory;
+
+    /**
+     * The project ignore patterns, applied to paths relative to the directory.
+     */
+    private final IgnoreMatcher ignored;
+
+    /**
+     * The time in nanoseconds without changes before an analysis is started.
+     */
+    private final long quietPeriod;
+
+    /**
+     * The thread running analyses, one at a time.
+     */
+    private final ExecutorService analyzer;
+
+    private WatchService watchService;
+
+    private Thread watchThread;
+
+    /**
+     * The time in nanoseconds at which an analysis should be started, only valid if {@code triggered}.
+     */
+    private long deadline;
+
+    private boolean triggered;
+
+    private boolean running;
+
+    /**
+     * The most recent failure to watch a directory, {@code null} if every directory is watched.
+     */
+    private IOException lastFailure;
+
+    public AnalysisWatcher(BuildToolIntegrationService service, String externalId, File directory, long quietPeriod, TimeUnit unit) {
+        this(service, externalId, null, directory, Collections.<String> emptyList(), quietPeriod, unit);
+    }
+
+    /**
+     * Creates a watcher for a project, the ignore patterns of the project are applied to both the watch and the
+     * analysis.
+     */
+    public AnalysisWatcher(BuildToolIntegrationService service, ProtexProject project, File directory, long quietPeriod, TimeUnit unit) {
+        this(service, project.getExternalId(), project, directory,
+                project.getIgnorePatterns() != null ? project.getIgnorePatterns() : Collections.<String> emptyList(), quietPeriod, unit);
+    }
+
+    private AnalysisWatcher(BuildToolIntegrationService service, String externalId, ProtexProject project, File directory,
+            Collection<String> ignorePatterns, long quietPeriod, TimeUnit unit) {
+        this.service = service;
+        this.externalId = externalId;
+        this.project = project;
+        this.directory = directory;
+        this.ignored = IgnoreMatcher.compile(ignorePatterns);
+        this.quietPeriod = unit.toNanos(quietPeriod);
+        this.analyzer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "BDS Analysis Watcher Analyzer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts watching the directory.
+     */
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            throw new IllegalStateException("already started");
+        }
+        watchService = directory.toPath().getFileSystem().newWatchService();
+        register(directory.toPath());
+        if (lastFailure != null) {
+            // Fail fast if the tree cannot be watched to begin with
+            IOException failure = lastFailure;
+            watchService.close();
+            watchService = null;
+            lastFailure = null;
+            throw failure;
+        }
+        trigger(0L);
+
+        watchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "BDS Analysis Watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Stops watching the directory. An analysis which is already running is allowed to complete.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        // Closing the watch service also stops the watch thread
+        triggered = false;
+        analyzer.shutdown();
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Processes file system events until the watch service is closed.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key;
+                long timeout = timeUntilDeadline();
+                if (timeout < 0L) {
+                    key = watchService.take();
+                } else if (timeout == 0L) {
+                    analyzeIfDue();
+                    continue;
+                } else {
+                    key = watchService.poll(timeout, TimeUnit.NANOSECONDS);
+                }
+
+                if (key != null) {
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            changed = true;
+                            continue;
+                        }
+                        Path child = ((Path) key.watchable()).resolve((Path) event.context());
+                        // A deleted entry may have been a directory, assume it was so deleting an ignored directory is quiet
+                        boolean isDirectory = event.kind() == ENTRY_DELETE || Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS);
+                        if (isIgnored(child, isDirectory)) {
+                            continue;
+                        }
+                        if (event.kind() == ENTRY_CREATE && isDirectory) {
+                            // New directories need to be watched too
+                            register(child);
+                        }
+                        changed = true;
+                    }
+                    key.reset();
+                    if (changed) {
+                        trigger(quietPeriod);
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            return;
+        } catch (InterruptedException e) {
+            return;
+        }
+    }
+
+    /**
+     * Returns the most recent failure to watch a directory, changes below that directory may be missed until the next
+     * analysis. Returns {@code null} if every directory is watched.
+     */
+    public synchronized IOException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Checks to see if a path below the directory matches the ignore patterns.
+     */
+    private boolean isIgnored(Path path, boolean isDirectory) {
+        Path relative = directory.toPath().relativize(path);
+        return !relative.toString().isEmpty() && ignored.isIgnored(relative.toString().replace(File.separatorChar, '/'), isDirectory);
+    }
+
+    /**
+     * Registers a directory and all of its sub-directories which are not ignored with the watch service. Entries which
+     * disappear while they are being registered are skipped, other failures are remembered and the rest of the tree is
+     * still registered.
+     */
+    private void register(Path start) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (isIgnored(dir, true)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    try {
+                        dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY, OVERFLOW);
+                    } catch (NoSuchFileException e) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    } catch (IOException e) {
+                        failed(e);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    if (!(e instanceof NoSuchFileException)) {
+                        failed(e);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    private synchronized void failed(IOException e) {
+        lastFailure = e;
+    }
+
+    /**
+     * Requests an analysis once there have been no changes for the supplied delay.
+     */
+    private synchronized void trigger(long delay) {
+        deadline = System.nanoTime() + delay;
+        triggered = true;
+    }
+
+    /**
+     * Returns the time until an analysis should be started, negative if no analysis is needed.
+     */
+    private synchronized long timeUntilDeadline() {
+        if (!triggered || running) {
+            // Changes made while running are handled once the analysis completes, check back periodically
+            return triggered ? Math.max(quietPeriod, 1L) : -1L;
+        }
+        return Math.max(deadline - System.nanoTime(), 0L);
+    }
+
+    /**
+     * Starts an analysis unless one is already running.
+     */
+    private synchronized void analyzeIfDue() {
+        if (!triggered || running || analyzer.isShutdown()) {
+            return;
+        }
+        triggered = false;
+        running = true;
+        analyzer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (project != null) {
+                        service.analyze(project, Collections.singleton(directory), false);
+                    } else {
+                        service.analyze(externalId, directory, false);
+                    }
+                } catch (BuildToolIntegrationException e) {
+                    // Listeners registered with the service have already been notified
+                } finally {
+                    finished();
+                }
+            }
+        });
+    }
+
+    private synchronized void finished() {
+        running = false;
+        if (triggered) {
+            // Collapse everything that happened during the analysis into a single follow up
+            deadline = System.nanoTime() + quietPeriod;
+        }
+    }
+
+}
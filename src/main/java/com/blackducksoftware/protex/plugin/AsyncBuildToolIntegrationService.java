@@ -0,0 +1,249 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin;
+
+import java.io.File;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import com.blackducksoftware.sdk.protex.report.ReportTemplateRequest;
+import com.blackducksoftware.sdk.protex.report.SpdxReportConfiguration;
+
+/**
+ * An asynchronous facade over the build tool integration service. Each call is submitted to the supplied executor and
+ * returns immediately with a {@linkplain ServiceFuture future} of the result, allowing a build tool to overlap work
+ * (e.g. generating the report of one module while another module is analyzed) and to chain calls with callbacks
+ * instead of dedicating a thread to each call.
+ * <p>
+ * Calls are not ordered with respect to each other, callers must chain dependent calls (e.g. analyze after
+ * {@code createProject} completes). The underlying service must be safe for concurrent use when the executor runs
+ * more than one call at a time.
+ *
+ * @author jgustie
+ */
+public final class AsyncBuildToolIntegrationService {
+
+    private final BuildToolIntegrationService service;
+
+    private final Executor executor;
+
+    public AsyncBuildToolIntegrationService(BuildToolIntegrationService service, Executor executor) {
+        this.service = service;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the synchronous service calls are delegated to.
+     */
+    public BuildToolIntegrationService getService() {
+        return service;
+    }
+
+    /**
+     * @see BuildToolIntegrationService#createProject(ProtexProject)
+     */
+    public ServiceFuture<Void> createProjectAsync(final ProtexProject project) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws BuildToolIntegrationException {
+                service.createProject(project);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see BuildToolIntegrationService#updateProject(ProtexProject)
+     */
+    public ServiceFuture<Boolean> updateProjectAsync(final ProtexProject project) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws BuildToolIntegrationException {
+                return service.updateProject(project);
+            }
+        });
+    }
+
+    /**
+     * @see BuildToolIntegrationService#addSubProject(ProtexProject, ProtexProject)
+     */
+    public ServiceFuture<Void> addSubProjectAsync(final ProtexProject parentProject, final ProtexProject subProject) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws BuildToolIntegrationException {
+                service.addSubProject(parentProject, subProject);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see BuildToolIntegrationService#createCodePrint(ProtexProject)
+     */
+    public ServiceFuture<Void> createCodePrintAsync(final ProtexProject codePrint) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws BuildToolIntegrationException {
+                service.createCodePrint(codePrint);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see BuildToolIntegrationService#lookupProjectId(String)
+     */
+    public ServiceFuture<String> lookupProjectIdAsync(final String externalId) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws BuildToolIntegrationException {
+                return service.lookupProjectId(externalId);
+            }
+        });
+    }
+
+    /**
+     * @see BuildToolIntegrationService#lookupComponentId(String)
+     */
+    public ServiceFuture<String> lookupComponentIdAsync(final String externalId) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws BuildToolIntegrationException {
+                return service.lookupComponentId(externalId);
+            }
+        });
+    }
+
+    /**
+     * @see BuildToolIntegrationService#lookupProjectIds(Collection, int)
+     */
+    public ServiceFuture<Map<String, String>> lookupProjectIdsAsync(final Collection<String> externalIds, final int parallelism) {
+        return submit(new Callable<Map<String, String>>() {
+            @Override
+            public Map<String, String> call() throws BuildToolIntegrationException {
+                return service.lookupProjectIds(externalIds, parallelism);
+            }
+        });
+    }
+
+    /**
+     * @see BuildToolIntegrationService#lookupComponentIds(Collection, int)
+     */
+    public ServiceFuture<Map<String, String>> lookupComponentIdsAsync(final Collection<String> externalIds, final int parallelism) {
+        return submit(new Callable<Map<String, String>>() {
+            @Override
+            public Map<String, String> call() throws BuildToolIntegrationException {
+                return service.lookupComponentIds(externalIds, parallelism);
+            }
+        });
+    }
+
+    /**
+     * @see BuildToolIntegrationService#analyze(String, File, boolean)
+     */
+    public ServiceFuture<Void> analyzeAsync(final String externalId, final File directory, final boolean force) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws BuildToolIntegrationException {
+                service.analyze(externalId, directory, force);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see BuildToolIntegrationService#analyze(String, Collection, Collection, Collection, boolean)
+     */
+    public ServiceFuture<Void> analyzeAsync(final String externalId, final Collection<File> directories, final Collection<String> includes,
+            final Collection<String> excludes, final boolean force) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws BuildToolIntegrationException {
+                service.analyze(externalId, directories, includes, excludes, force);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see BuildToolIntegrationService#analyze(ProtexProject, Collection, boolean)
+     */
+    public ServiceFuture<Void> analyzeAsync(final ProtexProject project, final Collection<File> directories, final boolean force) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws BuildToolIntegrationException {
+                service.analyze(project, directories, force);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see BuildToolIntegrationService#analyzeSharded(ProtexProject, File, int, int, ShardBalance, boolean)
+     */
+    public ServiceFuture<Void> analyzeShardedAsync(final ProtexProject project, final File directory, final int shards, final int workers,
+            final ShardBalance balance, final boolean force) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws BuildToolIntegrationException {
+                service.analyzeSharded(project, directory, shards, workers, balance, force);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see BuildToolIntegrationService#generateHtmlReport(String, ReportTemplateRequest)
+     */
+    public ServiceFuture<Reader> generateHtmlReportAsync(final String externalId, final ReportTemplateRequest request) {
+        return submit(new Callable<Reader>() {
+            @Override
+            public Reader call() throws BuildToolIntegrationException {
+                return service.generateHtmlReport(externalId, request);
+            }
+        });
+    }
+
+    /**
+     * @see BuildToolIntegrationService#generateHtmlReport(String, SpdxReportConfiguration)
+     */
+    public ServiceFuture<Reader> generateHtmlReportAsync(final String externalId, final SpdxReportConfiguration request) {
+        return submit(new Callable<Reader>() {
+            @Override
+            public Reader call() throws BuildToolIntegrationException {
+                return service.generateHtmlReport(externalId, request);
+            }
+        });
+    }
+
+    private <V> ServiceFuture<V> submit(Callable<V> call) {
+        ServiceFuture<V> future = new ServiceFuture<V>(call);
+        executor.execute(future);
+        return future;
+    }
+
+}
@@ -25,6 +25,7 @@ package com.blackducksoftware.protex.plugin;
 
 import java.util.EnumMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Observable;
@@ -43,6 +44,13 @@ import java.util.Observer;
  * STRING := UTF-8
  * </pre>
  * 
+ * The separate process may also be controlled by the original process over its standard input using:
+ * 
+ * <pre>
+ * CONTROL := ( SOH &lt;COMMAND_ID&gt; STX ( &lt;STRING&gt; US )* ETX )*
+ * COMMAND_ID := BYTE
+ * </pre>
+ * 
  * @author jgustie
  */
 public class BDSToolPlumbing {
@@ -73,6 +81,105 @@ public class BDSToolPlumbing {
         void funnel(Object from, BDSToolSink into);
     }
 
+    /**
+     * Types of control messages we can send to a running {@code bdstool} command.
+     */
+    public interface BDSToolControlSink {
+        void pause();
+
+        void resume();
+
+        void sample(long intervalMillis);
+
+        void stop();
+    }
+
+    /**
+     * Receives the deferred arguments of a {@code bdstool} command.
+     */
+    public interface BDSToolArgumentsSink {
+        void arguments(List<String> arguments);
+    }
+
+    /**
+     * Both ends of the control protocol: deferred arguments and control messages.
+     */
+    public interface BDSToolControlChannel extends BDSToolControlSink, BDSToolArgumentsSink {
+    }
+
+    /**
+     * The supported control commands.
+     */
+    public enum ControlCommand {
+        UNKNOWN(-1) {
+            @Override
+            public void funnel(List<String> from, BDSToolControlChannel into) {
+                // Ignore commands we do not understand
+            }
+        },
+        ARGUMENTS(0) {
+            @Override
+            public void funnel(List<String> from, BDSToolControlChannel into) {
+                into.arguments(from);
+            }
+        },
+        PAUSE(1) {
+            @Override
+            public void funnel(List<String> from, BDSToolControlChannel into) {
+                into.pause();
+            }
+        },
+        RESUME(2) {
+            @Override
+            public void funnel(List<String> from, BDSToolControlChannel into) {
+                into.resume();
+            }
+        },
+        SAMPLE(3) {
+            @Override
+            public void funnel(List<String> from, BDSToolControlChannel into) {
+                try {
+                    into.sample(Long.parseLong(from.get(0)));
+                } catch (RuntimeException e) {
+                    // Ignore malformed sampling intervals
+                }
+            }
+        },
+        STOP(4) {
+            @Override
+            public void funnel(List<String> from, BDSToolControlChannel into) {
+                into.stop();
+            }
+        };
+
+        /**
+         * Used in the control protocol to identify the command type.
+         */
+        private final int identifier;
+
+        private ControlCommand(int identifier) {
+            this.identifier = identifier;
+        }
+
+        public void funnel(List<String> from, BDSToolControlChannel into) {
+            // Enums cannot declare "real" abstract methods
+            throw new AbstractMethodError();
+        }
+
+        public int toInt() {
+            return identifier;
+        }
+
+        public static ControlCommand valueOf(int identifier) {
+            for (ControlCommand command : values()) {
+                if (command.identifier == identifier) {
+                    return command;
+                }
+            }
+            return UNKNOWN;
+        }
+    }
+
     /**
      * The supported {@code BDSClientDriver} notifiers.
      */
@@ -184,15 +291,26 @@ public class BDSToolPlumbing {
             if (observable instanceof BDSToolForkedObservable) {
                 return ((BDSToolForkedObservable) observable).notifier();
             } else {
-                final String classSimpleName = observable.getClass().getSimpleName();
+                return NOTIFIER_TYPES.get(observable.getClass());
+            }
+        }
+
+        /**
+         * Classifies notifier types by name once per class. The values are stored with the class itself so this does not
+         * keep remote class loaders reachable.
+         */
+        private static final ClassValue<ClientDriverNotifier> NOTIFIER_TYPES = new ClassValue<ClientDriverNotifier>() {
+            @Override
+            protected ClientDriverNotifier computeValue(Class<?> type) {
+                final String classSimpleName = type.getSimpleName();
                 for (ClientDriverNotifier notifier : values()) {
                     if (notifier.notifierClassSimpleName.equals(classSimpleName)) {
                         return notifier;
                     }
                 }
+                return UNKNOWN;
             }
-            return UNKNOWN;
-        }
+        };
     }
 
     /**
@@ -290,6 +408,23 @@ public class BDSToolPlumbing {
         }
     }
 
+    /**
+     * The exit status of the separate process when it runs out of memory, this matches what the JVM uses for
+     * {@code -XX:+ExitOnOutOfMemoryError}.
+     */
+    protected static final int OUT_OF_MEMORY_STATUS = 3;
+
+    /**
+     * The exit status of the separate process when it was stopped using a control message.
+     */
+    protected static final int STOPPED_STATUS = 4;
+
+    /**
+     * The pseudo-file named by the initial progress notification of {@code bdstool}, before any real file is being
+     * worked on.
+     */
+    public static final String ASSESSING_WORK = "... assessing work ...";
+
     // Fire up the time machine, we are going back to 1963!
 
     protected static final int EOF = -1;
@@ -23,7 +23,9 @@
  */
 package com.blackducksoftware.protex.plugin;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
 import java.net.Authenticator;
 import java.net.MalformedURLException;
 import java.net.PasswordAuthentication;
@@ -32,9 +34,13 @@ import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.CountDownLatch;
 
+import com.blackducksoftware.protex.plugin.BDSToolPlumbing.BDSToolControlChannel;
 import com.blackducksoftware.protex.plugin.BDSToolPlumbing.ClientDriverNotifier;
 import com.blackducksoftware.protex.plugin.BDSToolPlumbing.ObserverPump;
 import com.blackducksoftware.protex.plugin.BDSToolSource.TransmissionStream;
@@ -62,18 +68,32 @@ public class BDSToolRemoteRunner {
 
             // Porcelain implementation, we are going to wrap everything into the transmission stream
             List<String> argList = new ArrayList<String>(Arrays.asList(args));
+            ControlReceiver control = null;
             if (argList.remove("--porcelain")) {
                 final TransmissionStream transmitter = new TransmissionStream();
                 closeSystemOut = true;
                 System.setOut(new PrintStream(transmitter));
                 Observer observer = new ObserverPump(transmitter);
+
+                // Progress notifications are gated by control messages coming from the original process
+                control = new ControlReceiver(observer);
+                control.start();
                 for (ClientDriverNotifier notifier : ClientDriverNotifier.values()) {
                     if (!notifier.methodName().isEmpty()) {
-                        ((Observable) clientDriverClass.getMethod(notifier.methodName()).invoke(clientDriver)).addObserver(observer);
+                        Observer notifierObserver = notifier == ClientDriverNotifier.PROGRESS ? control : observer;
+                        ((Observable) clientDriverClass.getMethod(notifier.methodName()).invoke(clientDriver)).addObserver(notifierObserver);
                     }
                 }
             }
 
+            // Deferred implementation, the remaining arguments are sent once the original process has resolved them
+            if (argList.remove("--deferred")) {
+                if (control == null) {
+                    throw new IllegalStateException("Deferred arguments require porcelain mode");
+                }
+                argList.addAll(control.awaitArguments());
+            }
+
             Object clientDriverArgs = argList.toArray(new String[argList.size()]);
             if (clientDriverClass.getMethod("execute", String[].class).invoke(clientDriver, clientDriverArgs) != null) {
                 status = 1;
@@ -81,9 +101,17 @@ public class BDSToolRemoteRunner {
         } catch (IllegalStateException e) {
             System.err.println(e.getMessage());
             status = 1;
+        } catch (InvocationTargetException e) {
+            // The client runs reflectively, classify what it actually threw
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            cause.printStackTrace();
+            status = cause instanceof OutOfMemoryError ? BDSToolPlumbing.OUT_OF_MEMORY_STATUS : 1;
         } catch (ReflectiveOperationException e) {
             e.printStackTrace();
             status = 1;
+        } catch (OutOfMemoryError e) {
+            e.printStackTrace();
+            status = BDSToolPlumbing.OUT_OF_MEMORY_STATUS;
         } catch (Throwable e) {
             e.printStackTrace();
             status = 1;
@@ -106,6 +134,169 @@ public class BDSToolRemoteRunner {
         }
     }
 
+    /**
+     * Receives control messages from the original process over standard input. The progress notifications of the client
+     * driver are routed through this observer: pausing blocks the client driver the next time it reports progress,
+     * sampling drops intermediate progress notifications and stopping waits for the next progress notification (i.e.
+     * in between files) before exiting. A client driver which does not report progress within the stop timeout (e.g.
+     * because it is stuck on a single file) is not waited for.
+     */
+    private static class ControlReceiver implements Runnable, BDSToolControlChannel, Observer {
+
+        /**
+         * The maximum time to wait for the client driver to reach the next progress notification when stopping.
+         */
+        private static final long STOP_TIMEOUT_MILLIS = 30000L;
+        private final Observer delegate;
+
+        private final CountDownLatch argumentsReceived = new CountDownLatch(1);
+
+        private volatile List<String> arguments;
+
+        private volatile long sampleIntervalMillis;
+
+        private long lastSampleMillis;
+
+        private boolean paused;
+
+        private boolean stopping;
+
+        private boolean parked;
+
+        private ControlReceiver(Observer delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * Starts receiving control messages on a background thread.
+         */
+        public void start() {
+            Thread thread = new Thread(this, "BDSTool Control Thread");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (BDSToolSource.receive(System.in, this)) {
+                    // Keep receiving until the original process closes the stream
+                }
+            } catch (IOException ignored) {
+            } finally {
+                // Never leave the client driver blocked waiting for a message that will not come
+                argumentsReceived.countDown();
+                resume();
+            }
+        }
+
+        /**
+         * Waits for the deferred arguments to be received.
+         */
+        public List<String> awaitArguments() throws InterruptedException {
+            argumentsReceived.await();
+            if (arguments == null) {
+                throw new IllegalStateException("Deferred arguments were not received");
+            }
+            return arguments;
+        }
+
+        @Override
+        public void arguments(List<String> arguments) {
+            this.arguments = new ArrayList<String>(arguments);
+            argumentsReceived.countDown();
+        }
+
+        @Override
+        public synchronized void pause() {
+            paused = true;
+        }
+
+        @Override
+        public synchronized void resume() {
+            paused = false;
+            notifyAll();
+        }
+
+        @Override
+        public void sample(long intervalMillis) {
+            sampleIntervalMillis = intervalMillis;
+        }
+
+        @Override
+        public void stop() {
+            synchronized (this) {
+                stopping = true;
+                notifyAll();
+                final long deadline = System.currentTimeMillis() + STOP_TIMEOUT_MILLIS;
+                long remaining = STOP_TIMEOUT_MILLIS;
+                while (!parked && remaining > 0) {
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            }
+
+            // The client driver is parked in between files (or has not made progress in time), send the EOT and exit
+            System.out.close();
+            System.exit(BDSToolPlumbing.STOPPED_STATUS);
+        }
+
+        @Override
+        public void update(Observable o, Object arg) {
+            synchronized (this) {
+                while (paused || stopping) {
+                    if (stopping) {
+                        parked = true;
+                        notifyAll();
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+
+                final long now = System.currentTimeMillis();
+                if (sampleIntervalMillis > 0 && now - lastSampleMillis < sampleIntervalMillis && !isMilestone(arg)) {
+                    return;
+                }
+                lastSampleMillis = now;
+            }
+            delegate.update(o, arg);
+
+            // Make sure the original process sees the complete message before we potentially block on the next one
+            System.out.flush();
+        }
+
+        /**
+         * Checks for the first and last progress notifications, these are never dropped when sampling.
+         */
+        private static boolean isMilestone(Object arg) {
+            String file = null;
+            String operationNumber = null;
+            String operationNumberMax = null;
+            if (arg instanceof Map) {
+                // The map may contain FlexCaseInsensitiveObject keys...compare strings
+                for (Entry<?, ?> entry : ((Map<?, ?>) arg).entrySet()) {
+                    String key = String.valueOf(entry.getKey());
+                    if (key.equals("file")) {
+                        file = String.valueOf(entry.getValue());
+                    } else if (key.equals("operation_number")) {
+                        operationNumber = String.valueOf(entry.getValue());
+                    } else if (key.equals("operation_number_max")) {
+                        operationNumberMax = String.valueOf(entry.getValue());
+                    }
+                }
+            }
+            return BDSToolPlumbing.ASSESSING_WORK.equals(file) || (operationNumber != null && operationNumber.equals(operationNumberMax));
+        }
+    }
+
     /**
      * Creates the class loader.
      */
@@ -32,6 +32,7 @@ import static com.blackducksoftware.protex.plugin.BDSToolPlumbing.STX;
 import static com.blackducksoftware.protex.plugin.BDSToolPlumbing.US;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.FilterOutputStream;
 import java.io.IOException;
@@ -39,12 +40,17 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import com.blackducksoftware.protex.plugin.BDSToolPlumbing.BDSToolControlChannel;
 import com.blackducksoftware.protex.plugin.BDSToolPlumbing.BDSToolSink;
 import com.blackducksoftware.protex.plugin.BDSToolPlumbing.ClientDriverNotifier;
+import com.blackducksoftware.protex.plugin.BDSToolPlumbing.ControlCommand;
 
 /**
  * The source and sink implementations of the "porcelain" mode used to run {@code bdstool} in a separate process.
@@ -166,6 +172,93 @@ public class BDSToolSource {
         }
     }
 
+    /**
+     * A stream used to send control messages to another process.
+     */
+    public static final class ControlStream extends FilterOutputStream implements BDSToolControlChannel {
+        public ControlStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void arguments(List<String> arguments) {
+            control(ControlCommand.ARGUMENTS, arguments);
+        }
+
+        @Override
+        public void pause() {
+            control(ControlCommand.PAUSE, Collections.<String> emptyList());
+        }
+
+        @Override
+        public void resume() {
+            control(ControlCommand.RESUME, Collections.<String> emptyList());
+        }
+
+        @Override
+        public void sample(long intervalMillis) {
+            control(ControlCommand.SAMPLE, Collections.singletonList(Long.toString(intervalMillis)));
+        }
+
+        @Override
+        public void stop() {
+            control(ControlCommand.STOP, Collections.<String> emptyList());
+        }
+
+        private void control(ControlCommand id, List<String> body) {
+            synchronized (out) {
+                try {
+                    out.write(SOH);
+                    out.write(id.toInt() & 0xFF);
+                    out.write(STX);
+                    for (String value : body) {
+                        out.write(value.getBytes(UTF_8));
+                        out.write(US);
+                    }
+                    out.write(ETX);
+                    out.flush();
+                } catch (IOException ignored) {
+                    // The process is gone, the exit status will be reported instead
+                }
+            }
+        }
+    }
+
+    /**
+     * Inverse of the control stream, used to read a single control message. Returns {@code false} if the stream ended
+     * before a complete message could be read.
+     */
+    public static boolean receive(InputStream in, BDSToolControlChannel sink) throws IOException {
+        final List<String> body = new ArrayList<String>();
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ControlCommand id = null;
+        while (true) {
+            int b = in.read();
+            switch (b) {
+            case SOH:
+                id = ControlCommand.valueOf(in.read());
+                break;
+            case STX:
+                body.clear();
+                buffer.reset();
+                break;
+            case US:
+                body.add(new String(buffer.toByteArray(), UTF_8));
+                buffer.reset();
+                break;
+            case ETX:
+                if (id != null) {
+                    id.funnel(body, sink);
+                }
+                return true;
+            case EOF:
+                return false;
+            default:
+                buffer.write(b);
+            }
+        }
+    }
+
     /**
      * Inverse of the transmission stream, used to parse the output it produces.
      */
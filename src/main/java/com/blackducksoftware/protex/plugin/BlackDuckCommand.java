@@ -23,31 +23,53 @@
  */
 package com.blackducksoftware.protex.plugin;
 
+import static com.blackducksoftware.protex.plugin.BDSToolPlumbing.OUT_OF_MEMORY_STATUS;
+import static com.blackducksoftware.protex.plugin.BDSToolPlumbing.STOPPED_STATUS;
+
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.lang.ProcessBuilder.Redirect;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.net.Authenticator;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
 
+import com.blackducksoftware.protex.plugin.BDSToolPlumbing.BDSToolControlSink;
 import com.blackducksoftware.protex.plugin.BDSToolPlumbing.ClientDriverNotifier;
 import com.blackducksoftware.protex.plugin.BDSToolPlumbing.ObservablesSink;
+import com.blackducksoftware.protex.plugin.BDSToolSource.ControlStream;
+import com.blackducksoftware.protex.plugin.BlackDuckCommandBuilder.ProcessOptions;
+import com.blackducksoftware.protex.plugin.BlackDuckCommandBuilder.ProcessOptions.Priority;
+import com.blackducksoftware.protex.plugin.ExecutionEngine.Request;
 
 /**
  * An encapsulation of a {@code bdstool} invocation. There is a lot of junk in here mostly related to reflectively
@@ -67,6 +89,11 @@ public final class BlackDuckCommand extends Observable {
      */
     private final List<String> arguments;
 
+    /**
+     * The arguments which are resolved after the command has been launched, may be {@code null}.
+     */
+    private final Callable<List<String>> deferredArguments;
+
     /**
      * The mapping of observable types to observers for this command.
      */
@@ -77,11 +104,41 @@ public final class BlackDuckCommand extends Observable {
      */
     private final ClassLoader loader;
 
+    /**
+     * The location of the remote code used to lease a class loader for each run, may be {@code null}.
+     */
+    private final URL[] clientCodeSource;
+
+    /**
+     * The preferred execution engine, {@code null} to select one based on the process options.
+     */
+    private final ExecutionEngine engine;
+
+    /**
+     * The estimated size of the command input, may be {@code null}.
+     */
+    private final ScanEstimate estimate;
+
+    /**
+     * The source directories the command input was gathered from, may be empty.
+     */
+    private final List<File> sources;
+
     /**
      * The java executable to use to run the forked process.
      */
     private File java;
 
+    /**
+     * The options used to run the forked process, {@code null} when running in process.
+     */
+    private final ProcessOptions processOptions;
+
+    /**
+     * The control state of this command, replayed to each process launched on behalf of this command.
+     */
+    private final CommandControl control = new CommandControl();
+
     /**
      * The current state of this command.
      */
@@ -92,10 +149,26 @@ public final class BlackDuckCommand extends Observable {
     }
 
     BlackDuckCommand(File java, List<String> arguments, Map<ClientDriverNotifier, List<Observer>> observers, ClassLoader loader) {
+        this(java, arguments, null, observers, loader, null, null, null, null, Collections.<File> emptyList());
+    }
+
+    BlackDuckCommand(File java, List<String> arguments, Callable<List<String>> deferredArguments, Map<ClientDriverNotifier, List<Observer>> observers,
+            URL[] clientCodeSource, ProcessOptions processOptions, ExecutionEngine engine, ScanEstimate estimate, List<File> sources) {
+        this(java, arguments, deferredArguments, observers, null, clientCodeSource, processOptions, engine, estimate, sources);
+    }
+
+    private BlackDuckCommand(File java, List<String> arguments, Callable<List<String>> deferredArguments, Map<ClientDriverNotifier, List<Observer>> observers,
+            ClassLoader loader, URL[] clientCodeSource, ProcessOptions processOptions, ExecutionEngine engine, ScanEstimate estimate, List<File> sources) {
         this.arguments = arguments;
+        this.deferredArguments = deferredArguments;
         this.observers = observers;
         this.loader = loader;
+        this.clientCodeSource = clientCodeSource;
+        this.engine = engine;
+        this.estimate = estimate;
+        this.sources = sources;
         this.java = java;
+        this.processOptions = processOptions;
 
         // Add all of the observers to this command so they can participate in command lifecycle events as well
         for (List<Observer> commandObservers : observers.values()) {
@@ -112,13 +185,49 @@ public final class BlackDuckCommand extends Observable {
         return state;
     }
 
+    /**
+     * Pauses this command the next time it reports progress. Control is only supported when the command runs in a
+     * separate process, otherwise the request is ignored. This method may be called from any thread.
+     */
+    public void pause() {
+        control.pause();
+    }
+
+    /**
+     * Resumes a paused command.
+     */
+    public void resume() {
+        control.resume();
+    }
+
+    /**
+     * Limits progress notifications to at most one per interval, the first and last notifications are always reported.
+     * An interval of zero reports all progress.
+     */
+    public void sampleProgress(long interval, TimeUnit unit) {
+        control.sample(unit.toMillis(interval));
+    }
+
+    /**
+     * Stops this command the next time it reports progress (i.e. in between files) so work already submitted to the
+     * server is not lost. The command fails with a non-fatal exception.
+     */
+    public void stop() {
+        control.stop();
+    }
+
     /**
      * Executes this command.
      */
     public void run() throws BuildToolIntegrationException {
         notifyInitiated();
+        ClientDriver driver = null;
         try {
-            ClientDriver driver = loader != null ? new ClassLoaderClientDriver(loader) : new ForkedClientDriver(java);
+            // A loader supplied directly must be used in process
+            final ProcessOptions requestedOptions = loader != null ? null : processOptions;
+            final Request request = new Request(arguments.isEmpty() ? null : arguments.get(0), arguments, java, requestedOptions, clientCodeSource, loader,
+                    estimate, sources, control);
+            driver = ExecutionEngines.select(request, engine).createDriver(request);
 
             for (Entry<ClientDriverNotifier, List<Observer>> entry : observers.entrySet()) {
                 Observable observable = driver.getNotifier(entry.getKey());
@@ -127,11 +236,15 @@ public final class BlackDuckCommand extends Observable {
                 }
             }
 
-            driver.execute(arguments);
+            driver.execute(arguments, deferredArguments);
             notifySucceeded();
         } catch (BuildToolIntegrationException e) {
             notifyFailed(e);
             throw e;
+        } finally {
+            if (driver != null) {
+                driver.release();
+            }
         }
     }
 
@@ -212,17 +325,172 @@ public final class BlackDuckCommand extends Observable {
     }
 
     /**
-     * A wrapper around the remote reflective access to {@code BDSClientDriver}.
+     * The control state of a command. Requests are forwarded to the currently running process (if any) and replayed to
+     * any process launched later.
+     */
+    static final class CommandControl implements BDSToolControlSink {
+        private BDSToolControlSink sink;
+
+        private boolean paused;
+
+        private long sampleIntervalMillis;
+
+        private boolean stopped;
+
+        /**
+         * Starts forwarding requests to the supplied sink, replaying the current state.
+         */
+        synchronized void attach(BDSToolControlSink sink) {
+            this.sink = sink;
+            if (paused) {
+                sink.pause();
+            }
+            if (sampleIntervalMillis > 0) {
+                sink.sample(sampleIntervalMillis);
+            }
+            if (stopped) {
+                sink.stop();
+            }
+        }
+
+        synchronized void detach() {
+            sink = null;
+        }
+
+        synchronized boolean isStopped() {
+            return stopped;
+        }
+
+        @Override
+        public synchronized void pause() {
+            paused = true;
+            if (sink != null) {
+                sink.pause();
+            }
+        }
+
+        @Override
+        public synchronized void resume() {
+            paused = false;
+            if (sink != null) {
+                sink.resume();
+            }
+        }
+
+        @Override
+        public synchronized void sample(long intervalMillis) {
+            sampleIntervalMillis = intervalMillis;
+            if (sink != null) {
+                sink.sample(intervalMillis);
+            }
+        }
+
+        @Override
+        public synchronized void stop() {
+            stopped = true;
+            if (sink != null) {
+                sink.stop();
+            }
+        }
+    }
+
+    /**
+     * A wrapper around the remote reflective access to {@code BDSClientDriver}. Drivers are created by an
+     * {@link ExecutionEngine} and used to run a single command.
      */
-    private static abstract class ClientDriver {
+    public static abstract class ClientDriver {
+        protected ClientDriver() {
+        }
+
+        /**
+         * Returns the observable used to report notifications of the specified type.
+         */
         protected abstract Observable getNotifier(ClientDriverNotifier observer);
 
-        protected abstract void execute(List<String> arguments) throws BuildToolIntegrationException;
+        /**
+         * Executes the command, deferred arguments (if any) must be appended to the arguments once resolved.
+         */
+        protected abstract void execute(List<String> arguments, Callable<List<String>> deferredArguments) throws BuildToolIntegrationException;
+
+        /**
+         * Releases any references this driver holds once execution is complete.
+         */
+        protected void release() {
+        }
+
+        /**
+         * Resolves the deferred arguments.
+         */
+        protected static List<String> resolve(Callable<List<String>> deferredArguments) throws BuildToolIntegrationException {
+            try {
+                return deferredArguments.call();
+            } catch (BuildToolIntegrationException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw BuildToolIntegrationException.unknownException(e);
+            }
+        }
     }
 
     /**
-     * A wrapper around an in process {@code BDSClientDriver}. This is known to cause perm gen issues because the class
-     * loader can never be garbage collected due to lingering references.
+     * The engine used to run commands in the current JVM.
+     */
+    static final ExecutionEngine IN_PROCESS_ENGINE = new ExecutionEngine() {
+        @Override
+        public String getName() {
+            return ExecutionEngines.IN_PROCESS;
+        }
+
+        @Override
+        public int score(Request request) {
+            return request.isInProcess() ? 0 : -1;
+        }
+
+        @Override
+        public ClientDriver createDriver(Request request) throws BuildToolIntegrationException {
+            if (request.getLoader() != null) {
+                return new ClassLoaderClientDriver(request.getLoader(), null);
+            }
+
+            ClientLoaderRegistry.Lease lease = ClientLoaderRegistry.acquire(request.getClientCodeSource(), BlackDuckCommand.class.getClassLoader());
+            ClientDriver driver = null;
+            try {
+                driver = new ClassLoaderClientDriver(lease.getLoader(), lease);
+                return driver;
+            } finally {
+                if (driver == null) {
+                    lease.close();
+                }
+            }
+        }
+    };
+
+    /**
+     * The engine used to run each command in a separate process.
+     */
+    static final ExecutionEngine FORKED_ENGINE = new ExecutionEngine() {
+        @Override
+        public String getName() {
+            return ExecutionEngines.FORKED;
+        }
+
+        @Override
+        public int score(Request request) {
+            return request.isInProcess() ? -1 : 0;
+        }
+
+        @Override
+        public ClientDriver createDriver(Request request) {
+            return new ForkedClientDriver(request.getJava(), request.getProcessOptions(), request.getSources(), request.control());
+        }
+    };
+
+    /**
+     * A wrapper around an in process {@code BDSClientDriver}. This is known to cause perm gen issues when the class
+     * loader is not {@linkplain ClientLoaderRegistry managed} because it can never be garbage collected due to lingering
+     * references.
      */
     private static final class ClassLoaderClientDriver extends ClientDriver {
 
@@ -236,21 +504,57 @@ public final class BlackDuckCommand extends Observable {
          */
         private static final String EXECUTE_METHOD_NAME = "execute";
 
+        /**
+         * The type of the {@code BDSClientDriver#execute} method.
+         */
+        private static final MethodType EXECUTE_METHOD_TYPE = MethodType.methodType(String[].class, String[].class);
+
+        /**
+         * The type of the {@code BDSClientDriver} notifier accessor methods.
+         */
+        private static final MethodType NOTIFIER_METHOD_TYPE = MethodType.methodType(Observable.class);
+
         /**
          * The instance of {@code BDSClientDriver} loaded from a remote class loader.
          */
         private final Object instance;
 
         /**
-         * A reflective handle to the {@code BDSClientDriver#execute} method.
+         * A handle to the {@code BDSClientDriver#execute} method, bound to the instance.
+         */
+        private final MethodHandle executeMethod;
+
+        /**
+         * The notifiers of the instance, resolved once up front.
          */
-        private final Method executeMethod;
+        private final Map<ClientDriverNotifier, Observable> notifiers = new EnumMap<ClientDriverNotifier, Observable>(ClientDriverNotifier.class);
 
-        private ClassLoaderClientDriver(ClassLoader loader) throws BuildToolIntegrationException {
+        /**
+         * The lease on the class loader, {@code null} if the class loader is not managed.
+         */
+        private final ClientLoaderRegistry.Lease lease;
+
+        /**
+         * The standard out of the client driver while this command is running.
+         */
+        private final LineSink sysout = new LineSink();
+
+        private ClassLoaderClientDriver(ClassLoader loader, ClientLoaderRegistry.Lease lease) throws BuildToolIntegrationException {
+            this.lease = lease;
             try {
                 Class<?> driverType = loader.loadClass(DRIVER_CLASS_NAME);
                 instance = driverType.getConstructor(Boolean.TYPE).newInstance(false);
-                executeMethod = driverType.getDeclaredMethod(EXECUTE_METHOD_NAME, String[].class);
+
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                executeMethod = lookup.unreflect(driverType.getDeclaredMethod(EXECUTE_METHOD_NAME, String[].class)).bindTo(instance)
+                        .asType(EXECUTE_METHOD_TYPE);
+                for (ClientDriverNotifier notifier : ClientDriverNotifier.values()) {
+                    if (!notifier.methodName().isEmpty()) {
+                        MethodHandle notifierMethod = lookup.unreflect(driverType.getDeclaredMethod(notifier.methodName())).bindTo(instance)
+                                .asType(NOTIFIER_METHOD_TYPE);
+                        notifiers.put(notifier, (Observable) notifierMethod.invokeExact());
+                    }
+                }
             } catch (ClassNotFoundException e) {
                 throw BuildToolIntegrationException.remoteClientDriverNotFound().initCause(e);
             } catch (UnsupportedClassVersionError e) {
@@ -264,50 +568,124 @@ public final class BlackDuckCommand extends Observable {
             } catch (NoSuchMethodException e) {
                 throw new BlackDuckCommandReflectionException(e);
             } catch (InvocationTargetException e) {
+                throw handle(e.getCause());
+            } catch (Throwable e) {
                 throw handle(e);
             }
         }
 
         @Override
         protected Observable getNotifier(ClientDriverNotifier observer) {
-            try {
-                Method notifierMethod = instance.getClass().getDeclaredMethod(observer.methodName());
-                return (Observable) notifierMethod.invoke(instance);
-            } catch (SecurityException e) {
-                throw new BlackDuckCommandReflectionException(e);
-            } catch (IllegalAccessException e) {
-                throw new BlackDuckCommandReflectionException(e);
-            } catch (NoSuchMethodException e) {
-                throw new BlackDuckCommandReflectionException(e);
-            } catch (InvocationTargetException e) {
-                throw handle(e);
+            if (observer == ClientDriverNotifier.SYSOUT) {
+                return sysout.observable;
+            }
+            Observable notifier = notifiers.get(observer);
+            if (notifier == null) {
+                throw new BlackDuckCommandReflectionException(new NoSuchMethodException(observer.methodName()));
             }
+            return notifier;
         }
 
         @Override
-        protected void execute(List<String> arguments) throws BuildToolIntegrationException {
+        protected void execute(List<String> arguments, Callable<List<String>> deferredArguments) throws BuildToolIntegrationException {
             try {
+                // There is nothing to overlap with in process, just resolve the deferred arguments up front
+                if (deferredArguments != null) {
+                    arguments.addAll(resolve(deferredArguments));
+                }
+
                 // Strip any -J options before converting to an array
                 for (Iterator<String> i = arguments.iterator(); i.hasNext();) {
                     if (i.next().startsWith("-J")) {
                         i.remove();
                     }
                 }
-                Object args = arguments.toArray(EMPTY_ARGUMENTS);
+                String[] args = arguments.toArray(EMPTY_ARGUMENTS);
 
-                String[] output = (String[]) executeMethod.invoke(instance, args);
-                if (output != null) {
-                    throw BuildToolIntegrationException.unknownCommandFailure(output);
+                Authenticator authenticator = ClientLoaderRegistry.defaultAuthenticator();
+                SystemOutDemultiplexer.Redirect redirect = SystemOutDemultiplexer.redirect(sysout);
+                try {
+                    String[] output = (String[]) executeMethod.invokeExact(args);
+                    if (output != null) {
+                        throw BuildToolIntegrationException.unknownCommandFailure(output);
+                    }
+                } finally {
+                    sysout.flush();
+                    SystemOutDemultiplexer.restore(redirect);
+
+                    // The client driver installs its own authenticator, do not let it outlive the execution
+                    Authenticator clientAuthenticator = ClientLoaderRegistry.defaultAuthenticator();
+                    if (clientAuthenticator != null && clientAuthenticator != authenticator
+                            && ClientLoaderRegistry.isDefinedBy(clientAuthenticator.getClass().getClassLoader(), instance.getClass().getClassLoader())) {
+                        Authenticator.setDefault(authenticator);
+                    }
                 }
-            } catch (IllegalAccessException e) {
-                throw new BlackDuckCommandReflectionException(e);
-            } catch (InvocationTargetException e) {
+            } catch (BuildToolIntegrationException e) {
+                throw e;
+            } catch (Throwable e) {
                 throw handle(e);
             }
         }
 
-        private RuntimeException handle(InvocationTargetException e) {
-            Throwable cause = e.getCause();
+        @Override
+        protected void release() {
+            // The notifiers may be reachable from the (shared) class loader, do not let them retain our observers
+            for (Observable notifier : notifiers.values()) {
+                notifier.deleteObservers();
+            }
+            sysout.observable.deleteObservers();
+            if (lease != null) {
+                lease.close();
+            }
+        }
+
+        /**
+         * Collects the standard out of a single command into lines. Lines are sent to the {@code SYSOUT} observers or,
+         * if there are none, to the original standard out; either way the output of concurrent commands is not mixed
+         * within a line.
+         */
+        private static final class LineSink extends OutputStream {
+            private final Observable observable = new ObservablesSink().observable(ClientDriverNotifier.SYSOUT);
+
+            private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+            @Override
+            public synchronized void write(int b) {
+                line.write(b);
+                if (b == '\n') {
+                    flush();
+                }
+            }
+
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                int start = off;
+                for (int i = off; i < off + len; ++i) {
+                    if (b[i] == '\n') {
+                        line.write(b, start, i + 1 - start);
+                        flush();
+                        start = i + 1;
+                    }
+                }
+                line.write(b, start, off + len - start);
+            }
+
+            @Override
+            public synchronized void flush() {
+                if (line.size() > 0) {
+                    if (observable.countObservers() > 0) {
+                        observable.notifyObservers(new String(line.toByteArray(), Charset.defaultCharset()));
+                    } else {
+                        PrintStream original = SystemOutDemultiplexer.original();
+                        original.write(line.toByteArray(), 0, line.size());
+                        original.flush();
+                    }
+                    line.reset();
+                }
+            }
+        }
+
+        private RuntimeException handle(Throwable cause) {
             if (cause instanceof Error) {
                 // We cannot return this, so just re-throw it
                 throw (Error) cause;
@@ -326,18 +704,35 @@ public final class BlackDuckCommand extends Observable {
 
         private final File java;
 
+        private final Priority priority;
+
+        private final ProcessOptions processOptions;
+
+        private final List<File> sources;
+
+        private final CommandControl control;
+
         private final ObservablesSink notifiers = new ObservablesSink();
 
+        /**
+         * Flag indicating the most recent launch failed because the process ran out of memory.
+         */
+        private boolean outOfMemory;
+
         private ForkedClientDriver() {
-            this(null);
+            this(null, null, Collections.<File> emptyList(), new CommandControl());
         }
 
-        private ForkedClientDriver(File java) {
+        private ForkedClientDriver(File java, ProcessOptions processOptions, List<File> sources, CommandControl control) {
             if (java != null) {
                 this.java = java;
             } else {
                 this.java = new File(new File(System.getProperty("java.home"), "bin"), "java");
             }
+            priority = processOptions != null ? processOptions.getPriority() : null;
+            this.processOptions = processOptions;
+            this.sources = sources;
+            this.control = control;
         }
 
         @Override
@@ -346,9 +741,139 @@ public final class BlackDuckCommand extends Observable {
         }
 
         @Override
-        protected void execute(List<String> arguments) throws BuildToolIntegrationException {
+        protected void execute(List<String> arguments, Callable<List<String>> deferredArguments) throws BuildToolIntegrationException {
+            final HeapEscalation escalation = processOptions != null ? processOptions.getHeapEscalation() : null;
+            if (escalation == null || processOptions.getMaxHeapSize() <= 0) {
+                launch(arguments, deferredArguments);
+                return;
+            }
+
+            // Only resolve the deferred arguments once, regardless of how many times we launch
+            final Callable<List<String>> resolvedArguments = deferredArguments != null ? new ResolvedArguments(deferredArguments) : null;
+
+            final String key = heapHistoryKey(arguments);
+            long heapSize = escalation.initialHeapSize(key, processOptions.getMaxHeapSize());
+            File heapDump = null;
+            try {
+                for (int retries = 0;; ++retries) {
+                    try {
+                        launch(withHeapSize(arguments, heapSize, heapDump), resolvedArguments);
+                        if (heapSize > processOptions.getMaxHeapSize()) {
+                            escalation.record(key, heapSize);
+                        }
+                        return;
+                    } catch (BuildToolIntegrationException e) {
+                        if (!outOfMemory) {
+                            throw e;
+                        } else if (!escalation.canEscalate(retries, heapSize)) {
+                            if (heapDump != null && heapDump.exists()) {
+                                notifiers.output("Heap dump written to " + heapDump);
+                                heapDump = null;
+                            }
+                            throw BuildToolIntegrationException.remoteClientOutOfMemory(BlackDuckCommandBuilder.memory(heapSize)).initCause(e);
+                        }
+                        heapSize = escalation.escalate(heapSize);
+                        notifiers.output("Out of memory, retrying with a maximum heap size of " + BlackDuckCommandBuilder.memory(heapSize));
+                    }
+
+                    // Each retry gets a new dump, the previous one is superseded
+                    delete(heapDump);
+                    heapDump = escalation.heapDumpFile();
+                }
+            } finally {
+                delete(heapDump);
+            }
+        }
+
+        /**
+         * Returns the key used to remember the heap size: the server and the source directories. The analyzed path is
+         * not used since it is usually a temporary staging directory, nor is a deferred project identifier so the
+         * process can still be launched while the identifier is being resolved.
+         */
+        private String heapHistoryKey(List<String> arguments) {
+            if (sources.isEmpty()) {
+                return argument(arguments, "--server") + " " + argument(arguments, "--pure-project") + " " + argument(arguments, "--path");
+            }
+            StringBuilder key = new StringBuilder().append(argument(arguments, "--server"));
+            for (File source : sources) {
+                key.append(' ').append(source.getAbsolutePath());
+            }
+            return key.toString();
+        }
+
+        private static void delete(File heapDump) {
+            if (heapDump != null) {
+                heapDump.delete();
+            }
+        }
+
+        /**
+         * Returns a copy of the arguments with the maximum heap size replaced. If a heap dump file is supplied, the process
+         * will also write a heap dump to it if it runs out of memory.
+         */
+        private static List<String> withHeapSize(List<String> arguments, long heapSize, File heapDump) {
+            List<String> result = new ArrayList<String>(arguments.size() + 3);
+            for (String arg : arguments) {
+                if (!arg.startsWith("-J-Xmx")) {
+                    result.add(arg);
+                }
+            }
+            result.add("-J-Xmx" + BlackDuckCommandBuilder.memory(heapSize));
+            if (heapDump != null) {
+                result.add("-J-XX:+HeapDumpOnOutOfMemoryError");
+                result.add("-J-XX:HeapDumpPath=" + heapDump.getAbsolutePath());
+            }
+            return result;
+        }
+
+        /**
+         * Returns the value of an option from the argument list, or {@code null} if it is not present.
+         */
+        private static String argument(List<String> arguments, String option) {
+            int index = arguments.indexOf(option);
+            return index >= 0 && index + 1 < arguments.size() ? arguments.get(index + 1) : null;
+        }
+
+        /**
+         * Checks the error output of the process for signs that it ran out of memory.
+         */
+        private static boolean isOutOfMemory(String errorMessage) {
+            return errorMessage.contains(OutOfMemoryError.class.getName()) || errorMessage.contains("GC overhead limit exceeded");
+        }
+
+        /**
+         * Deferred arguments which are resolved at most once.
+         */
+        private static final class ResolvedArguments implements Callable<List<String>> {
+            private final Callable<List<String>> deferredArguments;
+
+            private List<String> resolved;
+
+            private ResolvedArguments(Callable<List<String>> deferredArguments) {
+                this.deferredArguments = deferredArguments;
+            }
+
+            @Override
+            public List<String> call() throws Exception {
+                if (resolved == null) {
+                    resolved = deferredArguments.call();
+                }
+                return resolved;
+            }
+        }
+
+        /**
+         * Launches the process and waits for it to complete.
+         */
+        private void launch(List<String> arguments, Callable<List<String>> deferredArguments) throws BuildToolIntegrationException {
+            outOfMemory = false;
+            if (control.isStopped()) {
+                throw BuildToolIntegrationException.remoteClientStopped();
+            }
+
             // Build up the JVM command
             List<String> command = new ArrayList<String>();
+            command.addAll(scheduling(priority));
             command.add(java.getAbsolutePath());
             command.add("-classpath");
             command.add(classpath());
@@ -366,6 +891,9 @@ public final class BlackDuckCommand extends Observable {
             command.add(BDSToolRemoteRunner.class.getName());
             command.addAll(arguments);
             command.add("--porcelain");
+            if (deferredArguments != null) {
+                command.add("--deferred");
+            }
             Process bdstool = null;
             ThreadErrorChecker errorChecker = null;
             ThreadPump pump = null;
@@ -381,6 +909,16 @@ public final class BlackDuckCommand extends Observable {
                 pump = new ThreadPump(bdstool, notifiers);
                 pump.start();
 
+                // Forward control requests to the process over standard input
+                ControlStream controlStream = new ControlStream(new BufferedOutputStream(bdstool.getOutputStream()));
+                control.attach(controlStream);
+
+                // The process loads the client while we resolve the remaining arguments; if that fails, the process is
+                // destroyed on the way out without ever being told what to do
+                if (deferredArguments != null) {
+                    controlStream.arguments(resolve(deferredArguments));
+                }
+
                 synchronized (this) {
                     while (true) {
                         // wait 100 millseconds,
@@ -392,6 +930,10 @@ public final class BlackDuckCommand extends Observable {
                             // process has finished, check for errors in the pump
                             if (exitValue != 0) {
                                 // process finished unsuccessfully
+                                outOfMemory |= exitValue == OUT_OF_MEMORY_STATUS;
+                                if (exitValue == STOPPED_STATUS) {
+                                    throw BuildToolIntegrationException.remoteClientStopped();
+                                }
 
                                 boolean unsupportedClassVersionError = false;
                                 String[] message = new String[0];
@@ -399,13 +941,14 @@ public final class BlackDuckCommand extends Observable {
                                     String errorMessage = errorChecker.getErrorMessage();
                                     // We send the messages from the error stream to the output notifier
                                     notifiers.output(errorMessage);
+                                    outOfMemory |= isOutOfMemory(errorMessage);
 
                                     if (errorMessage.contains(UnsupportedClassVersionError.class.getName())) {
                                         // Check to see if "UnsupportedClassVersionError" was logged to the error stream
                                         unsupportedClassVersionError = true;
                                     }
 
-                                    message = new String[] { errorChecker.getErrorMessage() };
+                                    message = new String[] { errorMessage };
                                 }
                                 if (pump.hasException() && !unsupportedClassVersionError) {
                                     // Only check the pump exception if there was no UnsupportedClassVersionError
@@ -438,6 +981,7 @@ public final class BlackDuckCommand extends Observable {
                                 // "Java HotSpot(TM) 64-Bit Server VM warning: ignoring option MaxPermSize" without
                                 // failing the build
                                 notifiers.output(errorMessage);
+                                outOfMemory |= isOutOfMemory(errorMessage);
                             }
                             if (pump.hasException()) {
                                 BuildToolIntegrationException failure = BuildToolIntegrationException.unknownException(pump.getException());
@@ -456,6 +1000,8 @@ public final class BlackDuckCommand extends Observable {
             } catch (InterruptedException e) {
                 throw BuildToolIntegrationException.unknownException(e);
             } finally {
+                control.detach();
+
                 // clean up threads, destroy process, etc.
                 // if (errorChecker != null) {
                 // errorChecker.interrupt();
@@ -562,7 +1108,56 @@ public final class BlackDuckCommand extends Observable {
             return stringBuilder.toString();
         }
 
+        /**
+         * Returns the command prefix used to apply the scheduling priority to the forked process. The niceness and I/O
+         * scheduling class are inherited by every thread of the process, so there is nothing to do once it is running.
+         */
+        private static List<String> scheduling(Priority priority) {
+            List<String> command = new ArrayList<String>();
+            if (priority != null && SystemUtils.IS_OS_LINUX) {
+                String nice = priority.getNiceness() != 0 ? which("nice") : null;
+                if (nice != null) {
+                    command.add(nice);
+                    command.add("-n");
+                    command.add(Integer.toString(priority.getNiceness()));
+                }
+
+                // Always use the "best-effort" class, "idle" can starve the scan entirely on a busy disk
+                String ionice = priority.getIoLevel() >= 0 ? which("ionice") : null;
+                if (ionice != null) {
+                    command.add(ionice);
+                    command.add("-c");
+                    command.add("2");
+                    command.add("-n");
+                    command.add(Integer.toString(priority.getIoLevel()));
+                }
+            }
+            return command;
+        }
+
+        /**
+         * Searches the path for an executable, returning {@code null} if it cannot be found.
+         */
+        private static String which(String name) {
+            String path = System.getenv("PATH");
+            if (path != null) {
+                for (String directory : path.split(File.pathSeparator)) {
+                    File executable = new File(directory, name);
+                    if (!directory.isEmpty() && executable.isFile() && executable.canExecute()) {
+                        return executable.getAbsolutePath();
+                    }
+                }
+            }
+            return null;
+        }
+
         protected String classpath() {
+            // Prefer the slim runner JAR so the child does not need to open (or scan) the whole plugin
+            File runnerJar = RunnerJar.extract();
+            if (runnerJar != null) {
+                return runnerJar.getAbsolutePath();
+            }
+
             try {
                 // The boot strap class path includes our own code source for the BDSToolRemoteRunner
                 ProtectionDomain pd = getClass().getProtectionDomain();
@@ -37,15 +37,20 @@ import java.net.PasswordAuthentication;
 import java.net.Proxy;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Observer;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.lang3.StringUtils;
 
 import com.blackducksoftware.protex.plugin.BDSToolPlumbing.ClientDriverNotifier;
+import com.blackducksoftware.protex.plugin.BlackDuckCommandBuilder.ProcessOptions.Priority;
 
 /**
  * A set of builders for creating {@link BlackDuckCommand} instances.
@@ -61,6 +66,52 @@ public abstract class BlackDuckCommandBuilder {
 	 */
 	public static class ProcessOptions {
 
+		/**
+		 * The scheduling priority classes of the separate process. Priorities are applied to the process (and all of
+		 * its threads) using {@code nice} and {@code ionice} on Linux; on other platforms, or if those utilities are
+		 * not available, the process inherits the priority of the current process.
+		 */
+		public enum Priority {
+			/**
+			 * Yield both CPU and disk to other work on the same host (e.g. compilation and tests).
+			 */
+			BACKGROUND(10, 7),
+
+			/**
+			 * Inherit the scheduling priority of the current process.
+			 */
+			NORMAL(0, -1),
+
+			/**
+			 * Favor disk access over other best-effort work. The CPU niceness is left alone since lowering it requires
+			 * elevated privileges.
+			 */
+			URGENT(0, 0);
+
+			/**
+			 * The CPU niceness adjustment, zero leaves the niceness unchanged.
+			 */
+			private final int niceness;
+
+			/**
+			 * The best-effort I/O scheduling level (0 is highest, 7 is lowest), negative leaves it unchanged.
+			 */
+			private final int ioLevel;
+
+			private Priority(final int niceness, final int ioLevel) {
+				this.niceness = niceness;
+				this.ioLevel = ioLevel;
+			}
+
+			public int getNiceness() {
+				return niceness;
+			}
+
+			public int getIoLevel() {
+				return ioLevel;
+			}
+		}
+
 		/**
 		 * Flag indicating if the process should be launched in debug mode. When true, the Java Debug Wire Protocol
 		 * agent library should be enabled with default configuration; additionally class data sharing will be disabled.
@@ -72,9 +123,21 @@ public abstract class BlackDuckCommandBuilder {
 		 */
 		private final long maxHeapSize;
 
-		private ProcessOptions(final boolean debug, final long maxHeapSize) {
+		/**
+		 * The scheduling priority of the process.
+		 */
+		private final Priority priority;
+
+		/**
+		 * The policy for re-running the process with a larger heap when it runs out of memory, may be {@code null}.
+		 */
+		private final HeapEscalation heapEscalation;
+
+		private ProcessOptions(final boolean debug, final long maxHeapSize, final Priority priority, final HeapEscalation heapEscalation) {
 			this.debug = debug;
 			this.maxHeapSize = maxHeapSize;
+			this.priority = priority;
+			this.heapEscalation = heapEscalation;
 		}
 
 		public boolean isDebug() {
@@ -85,6 +148,14 @@ public abstract class BlackDuckCommandBuilder {
 			return maxHeapSize;
 		}
 
+		public Priority getPriority() {
+			return priority;
+		}
+
+		public HeapEscalation getHeapEscalation() {
+			return heapEscalation;
+		}
+
 		public String getProxyHost(final String protocol, final Proxy proxy) {
 			final String proxyHost = ProxyUtil.proxyHost(proxy);
 			return proxyHost != null ? proxyHost : System.getProperty(protocol + ".proxyHost");
@@ -128,16 +199,34 @@ public abstract class BlackDuckCommandBuilder {
 
 		private String projectId;
 
+		private Callable<String> projectIdResolver;
+
 		private File directory;
 
 		private boolean force;
 
+		private ScanEstimate estimate;
+
+		private List<File> sources = Collections.emptyList();
+
 		private AnalyzeCommandBuilder() {
 			super("analyze");
 		}
 
 		public AnalyzeCommandBuilder projectId(final String projectId) {
 			this.projectId = projectId;
+			projectIdResolver = null;
+			return this;
+		}
+
+		/**
+		 * Specifies a project identifier which is resolved after the command has been launched. When running in a
+		 * separate process, the JVM starts and loads the client while the identifier is being resolved; if the
+		 * resolution fails the process is discarded.
+		 */
+		public AnalyzeCommandBuilder projectId(final Callable<String> projectId) {
+			this.projectId = null;
+			projectIdResolver = projectId;
 			return this;
 		}
 
@@ -151,12 +240,31 @@ public abstract class BlackDuckCommandBuilder {
 			return this;
 		}
 
+		/**
+		 * Specifies the estimated size of the directory being analyzed, made available to the execution engine.
+		 */
+		public AnalyzeCommandBuilder estimate(final ScanEstimate estimate) {
+			this.estimate = estimate;
+			return this;
+		}
+
+		/**
+		 * Specifies the source directories the analyzed directory was gathered from, used to remember settings (such
+		 * as the heap size) between runs when the analyzed directory is a temporary staging directory.
+		 */
+		public AnalyzeCommandBuilder sources(final Collection<File> sources) {
+			this.sources = new ArrayList<File>(sources);
+			return this;
+		}
+
 		@Override
 		protected List<String> arguments() {
 			final List<String> arguments = super.arguments();
 			arguments.add("--no-new-project");
-			arguments.add("--pure-project");
-			arguments.add(projectId);
+			if (projectIdResolver == null) {
+				arguments.add("--pure-project");
+				arguments.add(projectId);
+			}
 			arguments.add("--path");
 			arguments.add(directory.getAbsolutePath());
 			if (force) {
@@ -165,6 +273,33 @@ public abstract class BlackDuckCommandBuilder {
 			return arguments;
 		}
 
+		@Override
+		protected ScanEstimate estimate() {
+			return estimate;
+		}
+
+		@Override
+		protected List<File> sources() {
+			return sources;
+		}
+
+		@Override
+		protected Callable<List<String>> deferredArguments() {
+			if (projectIdResolver == null) {
+				return super.deferredArguments();
+			}
+			final Callable<String> resolver = projectIdResolver;
+			return new Callable<List<String>>() {
+				@Override
+				public List<String> call() throws Exception {
+					final List<String> arguments = new LinkedList<String>();
+					arguments.add("--pure-project");
+					arguments.add(resolver.call());
+					return arguments;
+				}
+			};
+		}
+
 	}
 
 	/**
@@ -235,10 +370,15 @@ public abstract class BlackDuckCommandBuilder {
 	/**
 	 * Additional configuration used when running the Black Duck command in a separate process.
 	 * <p>
-	 * The default behavior is to fork a Java process with a 2g max heap; the permanent generation size (which is not
-	 * configurable) will be set to 256m.
+	 * The default behavior is to fork a Java process with a 2g max heap and normal scheduling priority; the permanent
+	 * generation size (which is not configurable) will be set to 256m.
 	 */
-	private ProcessOptions processOptions = new ProcessOptions(false, (long) Math.pow(1024, 3) * 2L);
+	private ProcessOptions processOptions = new ProcessOptions(false, (long) Math.pow(1024, 3) * 2L, Priority.NORMAL, null);
+
+	/**
+	 * The preferred execution engine, {@code null} to select an engine based on the process options.
+	 */
+	private ExecutionEngine engine;
 
 	protected BlackDuckCommandBuilder(final String command) {
 		this.command = command;
@@ -262,8 +402,8 @@ public abstract class BlackDuckCommandBuilder {
 	 * Build a new command which can be run (once).
 	 */
 	public final BlackDuckCommand build() throws BuildToolIntegrationException {
-		final ClassLoader loader = processOptions != null ? null : server.getClientLoader();
-		return new BlackDuckCommand(java, arguments(), observers, loader);
+		final URL[] clientCodeSource = processOptions != null ? null : server.getClientCodeSource();
+		return new BlackDuckCommand(java, arguments(), deferredArguments(), observers, clientCodeSource, processOptions, engine, estimate(), sources());
 	}
 
 	/**
@@ -299,19 +439,57 @@ public abstract class BlackDuckCommandBuilder {
 	 * Forces the Black Duck command to be run in a separate JVM with the specified maximum heap size.
 	 */
 	public final BlackDuckCommandBuilder withMaxHeapSize(final long maxHeapSize) {
-		processOptions = new ProcessOptions(processOptions.isDebug(), maxHeapSize);
+		processOptions = new ProcessOptions(processOptions.isDebug(), maxHeapSize, processOptions.getPriority(), processOptions.getHeapEscalation());
 		return this;
 	}
 
 	/**
-	 * Forces the Black Duck command to be run in the current JVM. This has known issues with permanent generation leaks
-	 * in Java 6 and Java 7; the default behavior is to run the command in a separate JVM.
+	 * Forces the Black Duck command to be run in a separate JVM with the specified scheduling priority.
+	 */
+	public final BlackDuckCommandBuilder withPriority(final Priority priority) {
+		processOptions = new ProcessOptions(processOptions.isDebug(), processOptions.getMaxHeapSize(), priority, processOptions.getHeapEscalation());
+		return this;
+	}
+
+	/**
+	 * Forces the Black Duck command to be run in a separate JVM which is re-run with a larger heap if it runs out of
+	 * memory.
+	 */
+	public final BlackDuckCommandBuilder withHeapEscalation(final HeapEscalation heapEscalation) {
+		processOptions = new ProcessOptions(processOptions.isDebug(), processOptions.getMaxHeapSize(), processOptions.getPriority(), heapEscalation);
+		return this;
+	}
+
+	/**
+	 * Forces the Black Duck command to be run in the current JVM. The client class loader is shared with other in process
+	 * commands against the same server and closed once it is idle; the default behavior is to run the command in a
+	 * separate JVM.
 	 */
 	public final BlackDuckCommandBuilder runningInProcess() {
 		processOptions = null;
 		return this;
 	}
 
+	/**
+	 * Prefers the supplied execution engine for the resulting command. The engine is only used if it can run the
+	 * command, otherwise the best available engine is selected.
+	 */
+	public final BlackDuckCommandBuilder usingEngine(final ExecutionEngine engine) {
+		this.engine = engine;
+		return this;
+	}
+
+	/**
+	 * Prefers the available execution engine with the specified name for the resulting command.
+	 */
+	public final BlackDuckCommandBuilder usingEngine(final String name) {
+		final ExecutionEngine namedEngine = ExecutionEngines.named(name);
+		if (namedEngine == null) {
+			throw new IllegalArgumentException("No execution engine named " + name);
+		}
+		return usingEngine(namedEngine);
+	}
+
 	/**
 	 * Adds a progress observer to the resulting command.
 	 * <p>
@@ -436,6 +614,28 @@ public abstract class BlackDuckCommandBuilder {
 		return arguments;
 	}
 
+	/**
+	 * Returns the arguments which can be resolved after the command has been launched, or {@code null} if all of the
+	 * arguments are known up front. Sub-classes may override this to overlap slow lookups with the command start up.
+	 */
+	protected Callable<List<String>> deferredArguments() {
+		return null;
+	}
+
+	/**
+	 * Returns the estimated size of the input to the command, or {@code null} if it is not known.
+	 */
+	protected ScanEstimate estimate() {
+		return null;
+	}
+
+	/**
+	 * Returns the source directories the input to the command was gathered from, empty if they are not known.
+	 */
+	protected List<File> sources() {
+		return Collections.emptyList();
+	}
+
 	/**
 	 * We assume each argument starts with a '-', so when we run into this character
 	 * if the string so far is not empty we assume this is the start of the next argument.
@@ -102,6 +102,18 @@ public final class BuildToolIntegrationException extends Exception {
                 expectedJavaVersion, expectedJavaClassVersion, javaVersion, javaClassVersion).initCause(error);
     }
 
+    public static BuildToolIntegrationException remoteClientOutOfMemory(String maxHeapSize) {
+        return new BuildToolIntegrationException(true, maxHeapSize);
+    }
+
+    public static BuildToolIntegrationException remoteClientStopped() {
+        return new BuildToolIntegrationException(false);
+    }
+
+    public static BuildToolIntegrationException stagingFailed(String directories) {
+        return new BuildToolIntegrationException(true, directories);
+    }
+
     public static BuildToolIntegrationException invalidServerUrl(String serverUrl) {
         return new BuildToolIntegrationException(true, serverUrl);
     }
@@ -23,11 +23,14 @@
  */
 package com.blackducksoftware.protex.plugin;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collection;
 import java.util.EventListener;
+import java.util.Map;
 
 import com.blackducksoftware.sdk.protex.report.ReportTemplateRequest;
 import com.blackducksoftware.sdk.protex.report.SpdxReportConfiguration;
@@ -38,7 +41,7 @@ import com.blackducksoftware.sdk.protex.report.SpdxReportConfiguration;
  *
  * @author jgustie
  */
-public interface BuildToolIntegrationService {
+public interface BuildToolIntegrationService extends Closeable {
 
     // TODO Should we take ProtexProject instead of "externalId" just in case we have already looked up the project ID?
 
@@ -53,6 +56,20 @@ public interface BuildToolIntegrationService {
      */
     String lookupComponentId(String externalId) throws BuildToolIntegrationException;
 
+    /**
+     * Looks up the Protex project identifiers of several build tool identifiers, issuing up to {@code parallelism}
+     * lookups at a time. The result maps every supplied identifier to the project identifier or {@code null} if it
+     * does not exist.
+     */
+    Map<String, String> lookupProjectIds(Collection<String> externalIds, int parallelism) throws BuildToolIntegrationException;
+
+    /**
+     * Looks up the Protex component identifiers of several build tool identifiers, issuing up to {@code parallelism}
+     * lookups at a time. The result maps every supplied identifier to the component identifier or {@code null} if it
+     * does not exist.
+     */
+    Map<String, String> lookupComponentIds(Collection<String> externalIds, int parallelism) throws BuildToolIntegrationException;
+
     /**
      * Creates a new project from the supplied model. The project identifier of the supplied instance will be updated.
      */
@@ -82,6 +99,29 @@ public interface BuildToolIntegrationService {
     // TODO Should this take a ProtexProject and use the source directory property?
     void analyze(String externalId, File directory, boolean force) throws BuildToolIntegrationException;
 
+    /**
+     * Performs a single analysis of several directories on the project identified with the supplied build tool
+     * identifier. Only files matching the include patterns (or all files if there are none) and not matching the
+     * exclude patterns are analyzed; patterns use "glob" syntax relative to each directory, e.g. {@code src/main/**}.
+     */
+    void analyze(String externalId, Collection<File> directories, Collection<String> includes, Collection<String> excludes, boolean force)
+            throws BuildToolIntegrationException;
+
+    /**
+     * Performs a single analysis of several directories on the supplied project. The project's ignore patterns are
+     * applied locally as well as on the server, so ignored files and directories (e.g. {@code node_modules/}) are never
+     * walked by {@code bdstool}.
+     */
+    void analyze(ProtexProject project, Collection<File> directories, boolean force) throws BuildToolIntegrationException;
+
+    /**
+     * Analyzes a large directory as several shards on separate workers. Each shard is a sub-project of the supplied
+     * project which is created the first time it is needed, the shard BOMs roll up into the BOM of the project. Shard
+     * assignments are stable from run to run provided the number of shards does not change.
+     */
+    void analyzeSharded(ProtexProject project, File directory, int shards, int workers, ShardBalance balance, boolean force)
+            throws BuildToolIntegrationException;
+
     /**
      * Generates a report.
      */
@@ -93,7 +133,8 @@ public interface BuildToolIntegrationService {
     Reader generateHtmlReport(String externalId, SpdxReportConfiguration request) throws BuildToolIntegrationException;
 
     /**
-     * Registers an arbitrary event listener with this service. Returns the service for chaining method calls.
+     * Registers an arbitrary event listener with this service. Returns the service for chaining method calls. Registering
+     * a {@code FingerprintCache} allows analyses of unchanged source to be skipped.
      */
     BuildToolIntegrationService register(EventListener listener);
 
@@ -104,4 +145,20 @@ public interface BuildToolIntegrationService {
      */
     URL generateLink(String uri, String fragment) throws MalformedURLException;
 
+    /**
+     * Starts preparing the connection to the Protex server in the background, initializing the SDK ports used by most
+     * workflows (looking up, creating and updating projects) while the build tool does other work. Otherwise the
+     * connection is prepared by the first call which needs it; calls which do not talk to the server (e.g.
+     * {@link #generateLink(String, String)}) never prepare it.
+     */
+    void warmUp();
+
+    /**
+     * Closes this service. Connections to the Protex server, which may be shared with other services connected to the
+     * same server as the same user, are only held for the duration of each call and are released once they have been
+     * idle for a while. The service must not be used after it is closed; closing it more than once has no effect.
+     */
+    @Override
+    void close();
+
 }
@@ -28,9 +28,6 @@ import static com.blackducksoftware.sdk.protex.policy.externalid.ProtexObjectTyp
 
 import java.io.File;
 import java.io.Reader;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -40,17 +37,25 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EventListener;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import com.blackducksoftware.protex.plugin.event.AnalysisEvent;
 import com.blackducksoftware.protex.plugin.event.AnalysisListener;
 import com.blackducksoftware.protex.plugin.tasks.AddSubProjectTask;
 import com.blackducksoftware.protex.plugin.tasks.AnalyzeTask;
+import com.blackducksoftware.protex.plugin.tasks.BulkLookupIdTask;
 import com.blackducksoftware.protex.plugin.tasks.CreateCodePrintTask;
 import com.blackducksoftware.protex.plugin.tasks.CreateProjectTask;
+import com.blackducksoftware.protex.plugin.tasks.ExternalIdCache;
+import com.blackducksoftware.protex.plugin.tasks.FingerprintCache;
 import com.blackducksoftware.protex.plugin.tasks.GenerateProtexReportTask;
 import com.blackducksoftware.protex.plugin.tasks.GenerateSpdxReportTask;
 import com.blackducksoftware.protex.plugin.tasks.LookupIdTask;
+import com.blackducksoftware.protex.plugin.tasks.ShardedAnalyzeTask;
 import com.blackducksoftware.protex.plugin.tasks.UpdateProjectTask;
+import com.blackducksoftware.sdk.fault.ErrorCode;
+import com.blackducksoftware.sdk.fault.SdkFault;
 import com.blackducksoftware.sdk.protex.policy.externalid.ExternalNamespace;
 import com.blackducksoftware.sdk.protex.report.ReportTemplateRequest;
 import com.blackducksoftware.sdk.protex.report.SpdxReportConfiguration;
@@ -58,48 +63,231 @@ import com.blackducksoftware.sdk.protex.report.SpdxReportConfiguration;
 /**
  * Default implementation of the build tool integration service. Most of the actual logic is actually captured in
  * separate tasks, however some common identifier mapping and error checking happens here.
+ * <p>
+ * A single instance may be shared by concurrent callers, e.g. the modules of a parallel Maven build: listeners may be
+ * registered at any time (an analysis already in progress keeps notifying the listeners it started with) and the
+ * underlying SDK proxy is safe for concurrent use. Registered listeners must be thread-safe since events from
+ * concurrent analyses are dispatched on their respective threads.
  *
  * @author jgustie
  */
 public class BuildToolIntegrationServiceImpl implements BuildToolIntegrationService {
 
     /**
-     * A helper for setting the current thread context class loader (and restoring it) around every interface method
+     * A wrapper for setting the current thread context class loader (and restoring it) around every interface method
      * invocation. This is necessary primarily for Maven 2 Site invocation which does not set the context class loader,
      * but other build systems (like Jenkins) also appear to have this problem.
      * <p>
      * Without this fix in place, the most likely failure is that CXF will fail to initialize. You end up getting
      * "Could not resolve a binding for null" exceptions caused by
      * "No binding factory for namespace http://schemas.xmlsoap.org/soap/ registered."
+     * <p>
+     * Each method delegates directly (instead of through a dynamic proxy) so calls are not subject to reflective
+     * dispatch, argument boxing or exception wrapping. New service methods must be added here as well.
      */
-    private static class ContextClassLoaderHandler implements InvocationHandler {
+    private static final class ContextClassLoaderService implements BuildToolIntegrationService {
         // TODO Should we generalize this further and put it in a public place?
 
-        private static final Class<?>[] INTERFACES = new Class[] { BuildToolIntegrationService.class };
-
         private final BuildToolIntegrationService delegate;
 
         private final ClassLoader loader;
 
-        private ContextClassLoaderHandler(BuildToolIntegrationService delegate, ClassLoader loader) {
+        private ContextClassLoaderService(BuildToolIntegrationService delegate, ClassLoader loader) {
             this.delegate = delegate;
             this.loader = loader;
         }
 
-        private BuildToolIntegrationService newProxyInstance() {
-            return (BuildToolIntegrationService) Proxy.newProxyInstance(loader, INTERFACES, this);
+        /**
+         * Installs the service class loader as the context class loader, returning the original.
+         */
+        private ClassLoader enter() {
+            final Thread thread = Thread.currentThread();
+            final ClassLoader originalLoader = thread.getContextClassLoader();
+            thread.setContextClassLoader(loader);
+            return originalLoader;
+        }
+
+        private static void exit(ClassLoader originalLoader) {
+            Thread.currentThread().setContextClassLoader(originalLoader);
+        }
+
+        @Override
+        public String lookupProjectId(String externalId) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                return delegate.lookupProjectId(externalId);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public String lookupComponentId(String externalId) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                return delegate.lookupComponentId(externalId);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public Map<String, String> lookupProjectIds(Collection<String> externalIds, int parallelism) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                return delegate.lookupProjectIds(externalIds, parallelism);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public Map<String, String> lookupComponentIds(Collection<String> externalIds, int parallelism) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                return delegate.lookupComponentIds(externalIds, parallelism);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public void createProject(ProtexProject project) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                delegate.createProject(project);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public boolean updateProject(ProtexProject project) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                return delegate.updateProject(project);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public void addSubProject(ProtexProject parentProject, ProtexProject subProject) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                delegate.addSubProject(parentProject, subProject);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public void createCodePrint(ProtexProject codePrint) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                delegate.createCodePrint(codePrint);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public void analyze(String externalId, File directory, boolean force) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                delegate.analyze(externalId, directory, force);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public void analyze(String externalId, Collection<File> directories, Collection<String> includes, Collection<String> excludes,
+                boolean force) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                delegate.analyze(externalId, directories, includes, excludes, force);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public void analyze(ProtexProject project, Collection<File> directories, boolean force) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                delegate.analyze(project, directories, force);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public void analyzeSharded(ProtexProject project, File directory, int shards, int workers, ShardBalance balance,
+                boolean force) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                delegate.analyzeSharded(project, directory, shards, workers, balance, force);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public Reader generateHtmlReport(String externalId, ReportTemplateRequest request) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                return delegate.generateHtmlReport(externalId, request);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public Reader generateHtmlReport(String externalId, SpdxReportConfiguration request) throws BuildToolIntegrationException {
+            final ClassLoader originalLoader = enter();
+            try {
+                return delegate.generateHtmlReport(externalId, request);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public URL generateLink(String uri, String fragment) throws MalformedURLException {
+            final ClassLoader originalLoader = enter();
+            try {
+                return delegate.generateLink(uri, fragment);
+            } finally {
+                exit(originalLoader);
+            }
+        }
+
+        @Override
+        public void warmUp() {
+            final ClassLoader originalLoader = enter();
+            try {
+                delegate.warmUp();
+            } finally {
+                exit(originalLoader);
+            }
         }
 
         @Override
-        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            final ClassLoader originalLoader = Thread.currentThread().getContextClassLoader();
+        public void close() {
+            final ClassLoader originalLoader = enter();
             try {
-                Thread.currentThread().setContextClassLoader(loader);
-                return method.invoke(delegate, args);
+                delegate.close();
             } finally {
-                Thread.currentThread().setContextClassLoader(originalLoader);
+                exit(originalLoader);
             }
         }
+
+        @Override
+        public BuildToolIntegrationService register(EventListener listener) {
+            delegate.register(listener);
+            return this;
+        }
     }
 
     /**
@@ -108,14 +296,24 @@ public class BuildToolIntegrationServiceImpl implements BuildToolIntegrationServ
     private final ExternalNamespace namespace;
 
     /**
-     * The SDK helper for accessing the individual Protex APIs.
+     * The server configuration.
      */
-    private final ProtexServerProxy proxy;
+    private final ProtexServer server;
+
+    /**
+     * Flag indicating this service has been closed, guarded by this service.
+     */
+    private boolean closed;
 
     /**
      * The event listeners registered with this service.
      */
-    private final Collection<EventListener> listeners = new ArrayList<EventListener>();
+    private final Collection<EventListener> listeners = new CopyOnWriteArrayList<EventListener>();
+
+    /**
+     * The cache of external identifier mappings, replaced when a cache is registered.
+     */
+    private volatile ExternalIdCache ids = new ExternalIdCache();
 
     /**
      * @deprecated This constructor may lead to class loader issues with CXF in certain environments where the context
@@ -125,27 +323,27 @@ public class BuildToolIntegrationServiceImpl implements BuildToolIntegrationServ
      */
     @Deprecated
     public BuildToolIntegrationServiceImpl(ProtexServer server, ExternalNamespace namespace) {
-        this(namespace, new ProtexServerProxy(server));
+        this(namespace, server);
     }
 
-    private BuildToolIntegrationServiceImpl(ExternalNamespace namespace, ProtexServerProxy proxy) {
+    private BuildToolIntegrationServiceImpl(ExternalNamespace namespace, ProtexServer server) {
         this.namespace = namespace;
-        this.proxy = proxy;
+        this.server = server;
     }
 
     /**
      * Creates a new instance of the build tool integration service.
      */
     public static BuildToolIntegrationService newInstance(ProtexServer server, ExternalNamespace namespace) {
-        BuildToolIntegrationService service = new BuildToolIntegrationServiceImpl(namespace, new ProtexServerProxy(server));
+        BuildToolIntegrationService service = new BuildToolIntegrationServiceImpl(namespace, server);
 
         // Using a relative path, look for one our resources in the context class loader. If it's
         // not there, assume that the context class loader is not the correct class loader and wrap
-        // the service implementation with a dynamic proxy which will adjust the context class
-        // loader before and after each method call.
+        // the service implementation with a delegate which will adjust the context class loader
+        // before and after each method call.
         if (Thread.currentThread().getContextClassLoader().getResource("protex-report.xslt") == null) {
             ClassLoader loader = BuildToolIntegrationServiceImpl.class.getClassLoader();
-            service = new ContextClassLoaderHandler(service, loader).newProxyInstance();
+            service = new ContextClassLoaderService(service, loader);
         }
 
         return service;
@@ -153,22 +351,49 @@ public class BuildToolIntegrationServiceImpl implements BuildToolIntegrationServ
 
     @Override
     public void createProject(ProtexProject project) throws BuildToolIntegrationException {
-        new CreateProjectTask(proxy, project, namespace).call();
+        SessionRegistry.Lease session = lease();
+        try {
+            new CreateProjectTask(session.getProxy(), project, namespace, ids).call();
+        } finally {
+            session.close();
+        }
     }
 
     @Override
     public boolean updateProject(ProtexProject project) throws BuildToolIntegrationException {
-        return new UpdateProjectTask(proxy, project).call();
+        SessionRegistry.Lease session = lease();
+        try {
+            return new UpdateProjectTask(session.getProxy(), project).call();
+        } finally {
+            session.close();
+        }
     }
 
     @Override
     public void addSubProject(ProtexProject parentProject, ProtexProject subProject) throws BuildToolIntegrationException {
-        final String parentProjectId = getProjectId(parentProject);
-        final String subProjectId = getProjectId(subProject);
+        try {
+            addSubProject(getProjectId(parentProject), parentProject, getProjectId(subProject));
+        } catch (BuildToolIntegrationException e) {
+            if (!isProjectNotFound(e)) {
+                throw e;
+            }
+            // A cached mapping may refer to a project which has since been deleted, look both up again once
+            evictProjectId(parentProject.getExternalId());
+            evictProjectId(subProject.getExternalId());
+            addSubProject(getProjectId(parentProject), parentProject, getProjectId(subProject));
+        }
+    }
+
+    private void addSubProject(String parentProjectId, ProtexProject parentProject, String subProjectId) throws BuildToolIntegrationException {
         if (parentProjectId == null) {
             throw BuildToolIntegrationException.missingParentProject(parentProject.getExternalId());
         }
-        new AddSubProjectTask(proxy, parentProjectId, subProjectId).call();
+        SessionRegistry.Lease session = lease();
+        try {
+            new AddSubProjectTask(session.getProxy(), parentProjectId, subProjectId).call();
+        } finally {
+            session.close();
+        }
     }
 
     /**
@@ -185,74 +410,205 @@ public class BuildToolIntegrationServiceImpl implements BuildToolIntegrationServ
     @Override
     public String lookupProjectId(String externalId) throws BuildToolIntegrationException {
         final String namespaceKey = namespace.getExternalNamespaceKey();
-        return new LookupIdTask(proxy, namespaceKey, PROJECT, externalId).call();
+        SessionRegistry.Lease session = lease();
+        try {
+            return new LookupIdTask(session.getProxy(), namespaceKey, PROJECT, externalId, ids).call();
+        } finally {
+            session.close();
+        }
     }
 
     @Override
     public String lookupComponentId(String externalId) throws BuildToolIntegrationException {
         final String namespaceKey = namespace.getExternalNamespaceKey();
-        return new LookupIdTask(proxy, namespaceKey, COMPONENT, externalId).call();
+        SessionRegistry.Lease session = lease();
+        try {
+            return new LookupIdTask(session.getProxy(), namespaceKey, COMPONENT, externalId, ids).call();
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public Map<String, String> lookupProjectIds(Collection<String> externalIds, int parallelism) throws BuildToolIntegrationException {
+        final String namespaceKey = namespace.getExternalNamespaceKey();
+        SessionRegistry.Lease session = lease();
+        try {
+            return new BulkLookupIdTask(session.getProxy(), namespaceKey, PROJECT, externalIds, parallelism, ids).call();
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public Map<String, String> lookupComponentIds(Collection<String> externalIds, int parallelism) throws BuildToolIntegrationException {
+        final String namespaceKey = namespace.getExternalNamespaceKey();
+        SessionRegistry.Lease session = lease();
+        try {
+            return new BulkLookupIdTask(session.getProxy(), namespaceKey, COMPONENT, externalIds, parallelism, ids).call();
+        } finally {
+            session.close();
+        }
     }
 
     @Override
     public void createCodePrint(ProtexProject codePrint) throws BuildToolIntegrationException {
-        new CreateCodePrintTask(proxy, codePrint, namespace).call();
+        SessionRegistry.Lease session = lease();
+        try {
+            new CreateCodePrintTask(session.getProxy(), codePrint, namespace, ids).call();
+        } finally {
+            session.close();
+        }
     }
 
     @Override
     public void analyze(String externalId, File directory, boolean force) throws BuildToolIntegrationException {
-        // Isolate the analysis listeners
+        analyze(externalId, Collections.singleton(directory), Collections.<String> emptySet(), Collections.<String> emptySet(), force);
+    }
+
+    @Override
+    public void analyze(String externalId, Collection<File> directories, Collection<String> includes, Collection<String> excludes, boolean force)
+            throws BuildToolIntegrationException {
+        analyze(externalId, directories, includes, excludes, Collections.<String> emptySet(), force);
+    }
+
+    @Override
+    public void analyze(ProtexProject project, Collection<File> directories, boolean force) throws BuildToolIntegrationException {
+        List<String> ignorePatterns = project.getIgnorePatterns() != null ? project.getIgnorePatterns() : Collections.<String> emptyList();
+        analyze(project.getExternalId(), directories, Collections.<String> emptySet(), Collections.<String> emptySet(), ignorePatterns, force);
+    }
+
+    private void analyze(final String externalId, Collection<File> directories, Collection<String> includes, Collection<String> excludes,
+            Collection<String> ignorePatterns, boolean force) throws BuildToolIntegrationException {
+        List<AnalysisListener> analysisListeners = analysisListeners();
+        FingerprintCache fingerprints = fingerprintCache();
+
+        final SessionRegistry.Lease session = lease();
+        try {
+            // Make sure we can map to a valid project identifier; this is done speculatively while the command is
+            // being launched so the (slow) SOAP calls overlap with the JVM start up. Failures are reported by the
+            // command. A cached mapping is confirmed first, so neither the analysis nor a fingerprint recorded for it
+            // ever targets a project which has since been deleted.
+            Callable<String> projectId = new Callable<String>() {
+                @Override
+                public String call() throws BuildToolIntegrationException {
+                    String resolved = new LookupIdTask(session.getProxy(), namespace.getExternalNamespaceKey(), PROJECT, externalId, ids, true)
+                            .call();
+                    if (resolved == null) {
+                        throw BuildToolIntegrationException.noSuchProject(externalId);
+                    }
+                    return resolved;
+                }
+            };
+
+            // Execute the command (which will also notify the listeners on failure)
+            new AnalyzeTask(session.getProxy(), projectId, directories, includes, excludes, ignorePatterns, force, analysisListeners, fingerprints)
+                    .call();
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public void analyzeSharded(ProtexProject project, File directory, int shards, int workers, ShardBalance balance, boolean force)
+            throws BuildToolIntegrationException {
+        SessionRegistry.Lease session = lease();
+        try {
+            new ShardedAnalyzeTask(session.getProxy(), namespace, project, directory, shards, workers, balance, force, analysisListeners(),
+                    fingerprintCache(), ids).call();
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Returns the registered analysis listeners.
+     */
+    private List<AnalysisListener> analysisListeners() {
         List<AnalysisListener> analysisListeners = new ArrayList<AnalysisListener>(listeners.size());
         for (EventListener listener : listeners) {
             if (listener instanceof AnalysisListener) {
                 analysisListeners.add((AnalysisListener) listener);
             }
         }
+        return analysisListeners;
+    }
 
-        // Make sure we can map to a valid project identifier
-        String projectId;
-        try {
-            projectId = ensureProjectId(externalId);
-        } catch (BuildToolIntegrationException e) {
-            // We need to manually notify the listeners since this occurred before command execution
-            AnalysisEvent event = new AnalysisEvent(Collections.singletonMap("exception", e));
-            for (AnalysisListener listener : analysisListeners) {
-                listener.analysisFailed(event);
+    /**
+     * Returns the fingerprint cache used to skip unchanged analyses, {@code null} if none is registered.
+     */
+    private FingerprintCache fingerprintCache() {
+        FingerprintCache fingerprints = null;
+        for (EventListener listener : listeners) {
+            if (listener instanceof FingerprintCache) {
+                fingerprints = (FingerprintCache) listener;
             }
-            throw e;
         }
-
-        // Execute the command (which will also notify the listeners on failure)
-        new AnalyzeTask(proxy, projectId, directory, force, analysisListeners).call();
+        return fingerprints;
     }
 
     @Override
     public Reader generateHtmlReport(String externalId, ReportTemplateRequest request) throws BuildToolIntegrationException {
-        final String projectId = ensureProjectId(externalId);
-        return new GenerateProtexReportTask(proxy, projectId, request).call();
+        SessionRegistry.Lease session = lease();
+        try {
+            return new GenerateProtexReportTask(session.getProxy(), ensureProjectId(externalId), request).call();
+        } catch (BuildToolIntegrationException e) {
+            if (!isProjectNotFound(e)) {
+                throw e;
+            }
+            evictProjectId(externalId);
+            return new GenerateProtexReportTask(session.getProxy(), ensureProjectId(externalId), request).call();
+        } finally {
+            session.close();
+        }
     }
 
     @Override
     public Reader generateHtmlReport(String externalId, SpdxReportConfiguration request) throws BuildToolIntegrationException {
-        final String projectId = ensureProjectId(externalId);
-        return new GenerateSpdxReportTask(proxy, projectId, request).call();
+        SessionRegistry.Lease session = lease();
+        try {
+            return new GenerateSpdxReportTask(session.getProxy(), ensureProjectId(externalId), request).call();
+        } catch (BuildToolIntegrationException e) {
+            if (!isProjectNotFound(e)) {
+                throw e;
+            }
+            evictProjectId(externalId);
+            return new GenerateSpdxReportTask(session.getProxy(), ensureProjectId(externalId), request).call();
+        } finally {
+            session.close();
+        }
     }
 
     @Override
     public URL generateLink(String uri, String fragment) throws MalformedURLException {
         try {
-            URI serverUri = new URI(proxy.server().getServerUrl());
+            URI serverUri = new URI(server.getServerUrl());
             URI resolvedUri = serverUri.resolve(uri);
             if (fragment != null) {
                 resolvedUri = new URI(resolvedUri.getScheme(), resolvedUri.getSchemeSpecificPart(), fragment);
             }
             return resolvedUri.toURL();
         } catch (URISyntaxException e) {
-            final String message = "Failed to resolve '" + uri + "' against '" + proxy.server().getServerUrl() + "'";
+            final String message = "Failed to resolve '" + uri + "' against '" + server.getServerUrl() + "'";
             throw (MalformedURLException) new MalformedURLException(message).initCause(e);
         }
     }
 
+    /**
+     * Checks to see if an exception was caused by the server not knowing a project, e.g. because a cached mapping
+     * refers to a project which has been deleted.
+     */
+    private static boolean isProjectNotFound(BuildToolIntegrationException e) {
+        return e.getCause() instanceof SdkFault && ((SdkFault) e.getCause()).getFaultInfo().getErrorCode() == ErrorCode.PROJECT_NOT_FOUND;
+    }
+
+    /**
+     * Discards the cached project identifier of an external identifier so the next lookup goes to the server.
+     */
+    private void evictProjectId(String externalId) throws BuildToolIntegrationException {
+        ids.evict(server.getServerUrl(), namespace.getExternalNamespaceKey(), PROJECT, externalId);
+    }
+
     /**
      * Like {@link #lookupProjectId(String)} except it fails if the mapping does not exist.
      */
@@ -264,8 +620,55 @@ public class BuildToolIntegrationServiceImpl implements BuildToolIntegrationServ
         return projectId;
     }
 
+    @Override
+    public void warmUp() {
+        Thread warmUp = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // The ports used to resolve, create and update projects are needed by almost every workflow; the
+                    // shared proxy stays idle in the registry long enough for the first real call to reuse them
+                    SessionRegistry.Lease session = lease();
+                    try {
+                        ProtexServerProxy proxy = session.getProxy();
+                        proxy.getExternalIdApi();
+                        proxy.getProjectApi();
+                    } finally {
+                        session.close();
+                    }
+                } catch (RuntimeException ignored) {
+                    // Failures will be reported by the first call which actually needs the port
+                }
+            }
+        }, "Protex Warm Up");
+        warmUp.setDaemon(true);
+        warmUp.setContextClassLoader(BuildToolIntegrationServiceImpl.class.getClassLoader());
+        warmUp.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+    }
+
+    /**
+     * Leases the (possibly shared) SDK helper for a single operation; the lease must be closed when the operation
+     * completes so a service which is never closed does not keep the helper alive.
+     */
+    private SessionRegistry.Lease lease() {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("closed");
+            }
+        }
+        return SessionRegistry.acquire(server);
+    }
+
     @Override
     public BuildToolIntegrationServiceImpl register(EventListener listener) {
+        if (listener instanceof ExternalIdCache) {
+            ids = (ExternalIdCache) listener;
+        }
         listeners.add(listener);
         return this;
     }
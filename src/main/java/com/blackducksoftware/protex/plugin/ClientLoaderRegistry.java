@@ -0,0 +1,451 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.math.BigInteger;
+import java.net.Authenticator;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A registry of the class loaders used to run {@code BDSClientDriver} in process. Loaders are shared by reference
+ * count, keyed by their code source and the digest of the code found there (so a server upgrade results in a new
+ * loader). Once a loader has not been leased for the idle timeout it is closed and the known references from outside
+ * of the loader (thread context class loaders, the default {@code Authenticator} and cached resource bundles) are
+ * cleared so the loader and all of its classes can be garbage collected.
+ * <p>
+ * Closed loaders are tracked weakly, {@link #awaitCollection(long, TimeUnit)} can be used to verify they are actually
+ * collected.
+ *
+ * @author jgustie
+ */
+public final class ClientLoaderRegistry {
+
+    /**
+     * The time a loader is kept open after the last lease has been released.
+     */
+    private static final long IDLE_TIMEOUT_MINUTES = 5L;
+
+    /**
+     * The time a verified code source stamp is trusted without asking the server again.
+     */
+    private static final long REVALIDATE_SECONDS = 30L;
+
+    /**
+     * The loaders currently in use or idle, keyed by code source and digest.
+     */
+    private static final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /**
+     * The most recently verified code source stamps, keyed by code source.
+     */
+    private static final Map<String, Stamp> stamps = new HashMap<String, Stamp>();
+
+    /**
+     * The loaders which have been closed but may not have been collected yet.
+     */
+    private static final List<Retired> retired = new ArrayList<Retired>();
+
+    /**
+     * The executor used to close idle loaders, lazily initialized.
+     */
+    private static ScheduledThreadPoolExecutor closer;
+
+    private ClientLoaderRegistry() {
+    }
+
+    /**
+     * A lease on a shared class loader. The lease must be closed when the loader is no longer needed.
+     */
+    public static final class Lease {
+        private final Entry entry;
+
+        private boolean closed;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * Returns the leased class loader.
+         */
+        public ClassLoader getLoader() {
+            synchronized (ClientLoaderRegistry.class) {
+                if (closed) {
+                    throw new IllegalStateException("closed");
+                }
+                return entry.loader;
+            }
+        }
+
+        /**
+         * Releases this lease, closing the same lease more than once has no effect.
+         */
+        public void close() {
+            synchronized (ClientLoaderRegistry.class) {
+                if (!closed) {
+                    closed = true;
+                    release(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * A shared class loader and its reference count.
+     */
+    private static final class Entry {
+        private final String key;
+
+        private final String codeSource;
+
+        private final URLClassLoader loader;
+
+        private int references;
+
+        private ScheduledFuture<?> idleClose;
+
+        private Entry(String key, String codeSource, URLClassLoader loader) {
+            this.key = key;
+            this.codeSource = codeSource;
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * The cache validators and digest last seen for a code source, and when they were last verified.
+     */
+    private static final class Stamp {
+        private final long lastModified;
+
+        private final long contentLength;
+
+        private final String digest;
+
+        private final long verifiedNanos;
+
+        private Stamp(long lastModified, long contentLength, String digest) {
+            this(lastModified, contentLength, digest, System.nanoTime());
+        }
+
+        private Stamp(long lastModified, long contentLength, String digest, long verifiedNanos) {
+            this.lastModified = lastModified;
+            this.contentLength = contentLength;
+            this.digest = digest;
+            this.verifiedNanos = verifiedNanos;
+        }
+
+        private boolean isFresh() {
+            return System.nanoTime() - verifiedNanos < TimeUnit.SECONDS.toNanos(REVALIDATE_SECONDS);
+        }
+
+        private boolean matches(URLConnection connection) {
+            return lastModified > 0L && lastModified == connection.getLastModified() && contentLength == connection.getContentLengthLong();
+        }
+
+        private Stamp verified() {
+            return new Stamp(lastModified, contentLength, digest);
+        }
+    }
+
+    /**
+     * A weak reference to a closed loader.
+     */
+    private static final class Retired extends WeakReference<ClassLoader> {
+        private final String description;
+
+        private Retired(Entry entry) {
+            super(entry.loader);
+            description = entry.codeSource + " (" + entry.key.substring(entry.key.lastIndexOf('@') + 1) + ")";
+        }
+    }
+
+    /**
+     * Leases a class loader for the supplied code source.
+     */
+    static Lease acquire(URL[] urls, ClassLoader parent) {
+        final String codeSource = Arrays.toString(urls);
+        final String key = codeSource + "@" + digest(urls);
+        synchronized (ClientLoaderRegistry.class) {
+            // Any other loader for the same code source is out of date
+            for (Entry entry : new ArrayList<Entry>(entries.values())) {
+                if (entry.codeSource.equals(codeSource) && !entry.key.equals(key)) {
+                    entries.remove(entry.key);
+                    if (entry.references == 0) {
+                        retire(entry);
+                    }
+                }
+            }
+
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, codeSource, URLClassLoader.newInstance(urls, parent));
+                entries.put(key, entry);
+            }
+            if (entry.idleClose != null) {
+                entry.idleClose.cancel(false);
+                entry.idleClose = null;
+            }
+            entry.references++;
+            return new Lease(entry);
+        }
+    }
+
+    /**
+     * Waits for all of the closed loaders to be garbage collected, returning {@code false} if any of them are still
+     * reachable after the timeout. This requests garbage collection and is intended as a diagnostic, for example to
+     * confirm that running in process does not leak class loaders on a long running host.
+     */
+    public static boolean awaitCollection(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!leakedLoaders().isEmpty()) {
+            if (System.nanoTime() - deadline >= 0L) {
+                return false;
+            }
+            System.gc();
+            Thread.sleep(100L);
+        }
+        return true;
+    }
+
+    /**
+     * Returns a description of the closed loaders which have not yet been garbage collected.
+     */
+    public static List<String> leakedLoaders() {
+        synchronized (ClientLoaderRegistry.class) {
+            List<String> leaked = new ArrayList<String>(retired.size());
+            for (Iterator<Retired> i = retired.iterator(); i.hasNext();) {
+                Retired loader = i.next();
+                if (loader.get() == null) {
+                    i.remove();
+                } else {
+                    leaked.add(loader.description);
+                }
+            }
+            return leaked;
+        }
+    }
+
+    /**
+     * Releases a reference to the supplied entry, closing the loader if it is unused.
+     */
+    private static void release(final Entry entry) {
+        if (--entry.references > 0) {
+            return;
+        } else if (entries.get(entry.key) != entry) {
+            // The entry is out of date, there is no point in waiting
+            retire(entry);
+        } else {
+            entry.idleClose = closer().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (ClientLoaderRegistry.class) {
+                        if (entry.references == 0 && entries.get(entry.key) == entry) {
+                            entries.remove(entry.key);
+                            retire(entry);
+                        }
+                    }
+                }
+            }, IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Closes the loader and clears known references to it.
+     */
+    private static void retire(Entry entry) {
+        if (entry.idleClose != null) {
+            entry.idleClose.cancel(false);
+            entry.idleClose = null;
+        }
+
+        // Context class loaders on threads started by the client driver (or just left behind)
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (isDefinedBy(thread.getContextClassLoader(), entry.loader)) {
+                thread.setContextClassLoader(entry.loader.getParent());
+            }
+        }
+
+        // The client driver installs its own default authenticator
+        Authenticator authenticator = defaultAuthenticator();
+        if (authenticator != null && isDefinedBy(authenticator.getClass().getClassLoader(), entry.loader)) {
+            Authenticator.setDefault(null);
+        }
+
+        ResourceBundle.clearCache(entry.loader);
+        try {
+            entry.loader.close();
+        } catch (IOException ignored) {
+        }
+        retired.add(new Retired(entry));
+    }
+
+    /**
+     * Checks to see if the supplied class loader is the specified loader or one of its descendants.
+     */
+    static boolean isDefinedBy(ClassLoader loader, ClassLoader ancestor) {
+        for (ClassLoader l = loader; l != null; l = l.getParent()) {
+            if (l == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the current default authenticator. There is no public accessor prior to Java 9 so we need reflection.
+     */
+    static Authenticator defaultAuthenticator() {
+        try {
+            return (Authenticator) Authenticator.class.getMethod("getDefault").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            try {
+                Field field = Authenticator.class.getDeclaredField("theAuthenticator");
+                field.setAccessible(true);
+                return (Authenticator) field.get(null);
+            } catch (ReflectiveOperationException ignored) {
+                return null;
+            } catch (RuntimeException ignored) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Computes a digest of the code found at the supplied locations. A location verified within the last few seconds is
+     * not checked again; otherwise HTTP locations are revalidated with a conditional request and the cache validators
+     * of other locations are compared to the last known values, so the code only needs to be read when it actually
+     * changes. Failures are ignored, the loader will report them when it attempts to load classes.
+     */
+    private static String digest(URL[] urls) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (URL url : urls) {
+                digest.update(digest(url).getBytes(UTF_8));
+            }
+            return String.format("%040x", new BigInteger(1, digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required", e);
+        }
+    }
+
+    private static String digest(URL url) {
+        final String key = url.toString();
+        final Stamp stamp;
+        synchronized (ClientLoaderRegistry.class) {
+            stamp = stamps.get(key);
+        }
+        if (stamp != null && stamp.isFresh()) {
+            return stamp.digest;
+        }
+        URLConnection connection = null;
+        try {
+            connection = url.openConnection();
+            connection.setUseCaches(false);
+            if (stamp != null && stamp.lastModified > 0L) {
+                connection.setIfModifiedSince(stamp.lastModified);
+            }
+            if (stamp != null && (isNotModified(connection) || stamp.matches(connection))) {
+                synchronized (ClientLoaderRegistry.class) {
+                    stamps.put(key, stamp.verified());
+                }
+                return stamp.digest;
+            }
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            InputStream in = connection.getInputStream();
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) >= 0) {
+                    digest.update(buffer, 0, count);
+                }
+            } finally {
+                in.close();
+            }
+
+            Stamp newStamp = new Stamp(connection.getLastModified(), connection.getContentLengthLong(), String.format("%040x", new BigInteger(1, digest.digest())));
+            synchronized (ClientLoaderRegistry.class) {
+                stamps.put(key, newStamp);
+            }
+            return newStamp.digest;
+        } catch (IOException e) {
+            // Fall back to the last known digest so a temporary failure does not create a new loader
+            return stamp != null ? stamp.digest : "unknown";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required", e);
+        } finally {
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).disconnect();
+            }
+        }
+    }
+
+    /**
+     * Checks to see if the server answered a conditional request with "304 Not Modified".
+     */
+    private static boolean isNotModified(URLConnection connection) throws IOException {
+        return connection instanceof HttpURLConnection
+                && ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor closer() {
+        if (closer == null) {
+            closer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "BDS Client Loader Closer");
+                    thread.setDaemon(true);
+                    // Do not pin whatever loader happened to be the context loader of the thread creating us
+                    thread.setContextClassLoader(null);
+                    return thread;
+                }
+            });
+            closer.setRemoveOnCancelPolicy(true);
+        }
+        return closer;
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+
+import com.blackducksoftware.protex.plugin.BDSToolPlumbing.BDSToolControlSink;
+import com.blackducksoftware.protex.plugin.BlackDuckCommand.ClientDriver;
+import com.blackducksoftware.protex.plugin.BlackDuckCommandBuilder.ProcessOptions;
+
+/**
+ * A strategy for executing {@code bdstool} commands. The built-in engines run commands in the current JVM or in a
+ * separate process; additional engines (e.g. a pool of warm processes or a remote worker) can be registered using the
+ * {@link java.util.ServiceLoader} mechanism and are selected using {@link ExecutionEngines}.
+ * <p>
+ * Engines must be thread-safe, a single instance is used to create drivers for concurrently running commands.
+ *
+ * @author jgustie
+ */
+public interface ExecutionEngine {
+
+    /**
+     * Returns the name used to explicitly select this engine.
+     */
+    String getName();
+
+    /**
+     * Returns the preference of this engine for running the requested command, higher values are preferred. Negative
+     * values indicate the engine cannot run the command. The built-in engines return zero for the commands they accept
+     * so any positive value takes precedence over them.
+     */
+    int score(Request request);
+
+    /**
+     * Creates a driver used to run a single command.
+     */
+    ClientDriver createDriver(Request request) throws BuildToolIntegrationException;
+
+    /**
+     * The details of a command to execute.
+     */
+    final class Request {
+        private final String command;
+
+        private final List<String> arguments;
+
+        private final File java;
+
+        private final ProcessOptions processOptions;
+
+        private final URL[] clientCodeSource;
+
+        private final ClassLoader loader;
+
+        private final ScanEstimate estimate;
+
+        private final List<File> sources;
+
+        private final BlackDuckCommand.CommandControl control;
+
+        Request(String command, List<String> arguments, File java, ProcessOptions processOptions, URL[] clientCodeSource, ClassLoader loader,
+                ScanEstimate estimate, List<File> sources, BlackDuckCommand.CommandControl control) {
+            this.command = command;
+            this.arguments = Collections.unmodifiableList(arguments);
+            this.java = java;
+            this.processOptions = processOptions;
+            this.clientCodeSource = clientCodeSource;
+            this.loader = loader;
+            this.estimate = estimate;
+            this.sources = Collections.unmodifiableList(sources);
+            this.control = control;
+        }
+
+        /**
+         * Returns the {@code bdstool} command name, e.g. "analyze".
+         */
+        public String getCommand() {
+            return command;
+        }
+
+        /**
+         * Returns the arguments known before execution, this does not include any deferred arguments.
+         */
+        public List<String> getArguments() {
+            return arguments;
+        }
+
+        /**
+         * Returns the java executable requested for a separate process, may be {@code null}.
+         */
+        public File getJava() {
+            return java;
+        }
+
+        /**
+         * Returns the options for running in a separate process, {@code null} if the command should be run in process.
+         */
+        public ProcessOptions getProcessOptions() {
+            return processOptions;
+        }
+
+        /**
+         * Checks to see if the command should be run in the current JVM.
+         */
+        public boolean isInProcess() {
+            return processOptions == null;
+        }
+
+        /**
+         * Returns the locations of the BDS Client code on the server, may be {@code null} if a class loader was supplied.
+         */
+        public URL[] getClientCodeSource() {
+            return clientCodeSource != null ? clientCodeSource.clone() : null;
+        }
+
+        /**
+         * Returns the class loader supplied for the command, usually {@code null}.
+         */
+        public ClassLoader getLoader() {
+            return loader;
+        }
+
+        /**
+         * Returns the estimated size of the command input, {@code null} if it was not measured.
+         */
+        public ScanEstimate getEstimate() {
+            return estimate;
+        }
+
+        /**
+         * Returns the source directories the command input was gathered from, empty if they are not known. Unlike the
+         * {@code --path} argument (which may be a temporary staging directory) these are stable between runs.
+         */
+        public List<File> getSources() {
+            return sources;
+        }
+
+        /**
+         * Starts forwarding the pause, resume, sample and stop requests for this command to the supplied sink. Requests
+         * already made are replayed to the sink.
+         */
+        public void attachControl(BDSToolControlSink sink) {
+            control.attach(sink);
+        }
+
+        /**
+         * Stops forwarding control requests.
+         */
+        public void detachControl() {
+            control.detach();
+        }
+
+        /**
+         * Checks to see if the command has been asked to stop.
+         */
+        public boolean isStopped() {
+            return control.isStopped();
+        }
+
+        BlackDuckCommand.CommandControl control() {
+            return control;
+        }
+    }
+
+}
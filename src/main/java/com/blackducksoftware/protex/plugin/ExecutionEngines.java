@@ -0,0 +1,148 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+
+import com.blackducksoftware.protex.plugin.ExecutionEngine.Request;
+
+/**
+ * Discovery and selection of {@linkplain ExecutionEngine execution engines}.
+ *
+ * @author jgustie
+ */
+public final class ExecutionEngines {
+
+    /**
+     * The name of the engine which runs commands in the current JVM.
+     */
+    public static final String IN_PROCESS = "in-process";
+
+    /**
+     * The name of the engine which runs each command in a separate process.
+     */
+    public static final String FORKED = "forked";
+
+    /**
+     * The engines registered with each class loader, loaded once per loader. The providers hold on to their own loader
+     * so the lists are only softly referenced, otherwise the loaders could never be collected.
+     */
+    private static final Map<ClassLoader, SoftReference<List<ExecutionEngine>>> providers =
+            new WeakHashMap<ClassLoader, SoftReference<List<ExecutionEngine>>>();
+
+    private ExecutionEngines() {
+    }
+
+    /**
+     * Returns all of the available engines: the built-in engines followed by the engines registered with the
+     * {@code ServiceLoader} of the current thread's context class loader. Providers which fail to load are ignored. The
+     * providers are only loaded the first time a class loader is used, later calls return the same instances.
+     */
+    public static List<ExecutionEngine> available() {
+        List<ExecutionEngine> engines = new ArrayList<ExecutionEngine>();
+        engines.add(BlackDuckCommand.IN_PROCESS_ENGINE);
+        engines.add(BlackDuckCommand.FORKED_ENGINE);
+        engines.addAll(providers(Thread.currentThread().getContextClassLoader()));
+        return engines;
+    }
+
+    /**
+     * Returns the engines registered with the supplied class loader, loading them if necessary.
+     */
+    private static List<ExecutionEngine> providers(ClassLoader loader) {
+        final ClassLoader key = loader != null ? loader : ClassLoader.getSystemClassLoader();
+        synchronized (providers) {
+            SoftReference<List<ExecutionEngine>> reference = providers.get(key);
+            List<ExecutionEngine> engines = reference != null ? reference.get() : null;
+            if (engines == null) {
+                engines = new ArrayList<ExecutionEngine>();
+                for (Iterator<ExecutionEngine> i = ServiceLoader.load(ExecutionEngine.class, key).iterator(); hasNext(i);) {
+                    try {
+                        engines.add(i.next());
+                    } catch (ServiceConfigurationError ignored) {
+                    }
+                }
+                engines = Collections.unmodifiableList(engines);
+                providers.put(key, new SoftReference<List<ExecutionEngine>>(engines));
+            }
+            return engines;
+        }
+    }
+
+    /**
+     * Returns the available engine with the specified name, or {@code null} if no such engine exists.
+     */
+    public static ExecutionEngine named(String name) {
+        for (ExecutionEngine engine : available()) {
+            if (engine.getName().equals(name)) {
+                return engine;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Selects the engine to run a request. The preferred engine is used if it can run the request, otherwise the
+     * available engine with the highest score is selected; ties go to the engine found first.
+     */
+    static ExecutionEngine select(Request request, ExecutionEngine preferred) {
+        if (preferred != null && preferred.score(request) >= 0) {
+            return preferred;
+        }
+
+        ExecutionEngine selected = null;
+        int selectedScore = -1;
+        for (ExecutionEngine engine : available()) {
+            int score = engine.score(request);
+            if (score > selectedScore) {
+                selected = engine;
+                selectedScore = score;
+            }
+        }
+        if (selected == null) {
+            throw new IllegalStateException("No execution engine can run " + request.getCommand());
+        }
+        return selected;
+    }
+
+    /**
+     * Checks for another provider, treating a broken provider configuration as the end of the providers.
+     */
+    private static boolean hasNext(Iterator<ExecutionEngine> i) {
+        try {
+            return i.hasNext();
+        } catch (ServiceConfigurationError e) {
+            return false;
+        }
+    }
+
+}
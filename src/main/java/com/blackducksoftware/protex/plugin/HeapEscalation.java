@@ -0,0 +1,193 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Configuration for re-running a forked {@code bdstool} invocation with a larger heap when it runs out of memory. Each
+ * retry doubles the maximum heap size (up to the ceiling). The heap size which eventually worked is remembered in the
+ * scratch directory so later invocations against the same server and source directories start with it.
+ * <p>
+ * Heap dumps are opt-in: when enabled, retries write a heap dump to the scratch directory if they run out of memory. A
+ * dump is deleted once a later attempt supersedes it, only the dump of the final failed attempt is kept.
+ */
+public final class HeapEscalation {
+
+    /**
+     * The name of the file in the scratch directory used to remember heap sizes.
+     */
+    private static final String HISTORY_FILE_NAME = "bdstool-heap.properties";
+
+    /**
+     * The largest maximum heap size in bytes we are willing to try.
+     */
+    private final long maxHeapCeiling;
+
+    /**
+     * The maximum number of times to re-run an invocation.
+     */
+    private final int maxRetries;
+
+    /**
+     * The directory used for heap dumps and the heap size history.
+     */
+    private final File scratchDirectory;
+
+    /**
+     * Flag indicating retries should write a heap dump if they run out of memory.
+     */
+    private final boolean heapDumps;
+
+    /**
+     * Creates a new heap escalation policy using a scratch directory in the temporary directory.
+     */
+    public HeapEscalation(long maxHeapCeiling, int maxRetries) {
+        this(maxHeapCeiling, maxRetries, new File(System.getProperty("java.io.tmpdir"), "bdstool"));
+    }
+
+    public HeapEscalation(long maxHeapCeiling, int maxRetries, File scratchDirectory) {
+        this(maxHeapCeiling, maxRetries, scratchDirectory, false);
+    }
+
+    public HeapEscalation(long maxHeapCeiling, int maxRetries, File scratchDirectory, boolean heapDumps) {
+        this.maxHeapCeiling = maxHeapCeiling;
+        this.maxRetries = maxRetries;
+        this.scratchDirectory = scratchDirectory;
+        this.heapDumps = heapDumps;
+    }
+
+    public long getMaxHeapCeiling() {
+        return maxHeapCeiling;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public File getScratchDirectory() {
+        return scratchDirectory;
+    }
+
+    public boolean isHeapDumps() {
+        return heapDumps;
+    }
+
+    /**
+     * Returns the heap size to start with: the larger of the configured size and the size remembered for the key.
+     */
+    long initialHeapSize(String key, long maxHeapSize) {
+        long rememberedHeapSize = 0L;
+        try {
+            rememberedHeapSize = Long.parseLong(load().getProperty(key, "0"));
+        } catch (NumberFormatException e) {
+            // Ignore garbage in the history
+        }
+        return Math.max(maxHeapSize, Math.min(rememberedHeapSize, maxHeapCeiling));
+    }
+
+    /**
+     * Checks to see if another attempt can be made after the specified number of retries at the specified heap size.
+     */
+    boolean canEscalate(int retries, long heapSize) {
+        return retries < maxRetries && heapSize < maxHeapCeiling;
+    }
+
+    /**
+     * Returns the heap size to use for the next attempt.
+     */
+    long escalate(long heapSize) {
+        return heapSize < maxHeapCeiling / 2L ? heapSize * 2L : maxHeapCeiling;
+    }
+
+    /**
+     * Returns a new file for a retry to write its heap dump to, or {@code null} if heap dumps are not enabled. The file
+     * does not exist yet, the JVM refuses to overwrite an existing dump.
+     */
+    File heapDumpFile() {
+        if (!heapDumps) {
+            return null;
+        }
+        return new File(scratchDirectory(), "bdstool-" + UUID.randomUUID() + ".hprof");
+    }
+
+    /**
+     * Returns the scratch directory, creating it if necessary.
+     */
+    private File scratchDirectory() {
+        scratchDirectory.mkdirs();
+        return scratchDirectory;
+    }
+
+    /**
+     * Remembers the heap size which worked for the key. This is a best effort, failures are ignored.
+     */
+    synchronized void record(String key, long heapSize) {
+        Properties history = load();
+        history.setProperty(key, Long.toString(heapSize));
+        try {
+            // Write to a temporary file and move it into place so other processes never see a partial file
+            File historyFile = new File(scratchDirectory(), HISTORY_FILE_NAME);
+            File tempFile = File.createTempFile(HISTORY_FILE_NAME, ".tmp", scratchDirectory);
+            try {
+                OutputStream out = new FileOutputStream(tempFile);
+                try {
+                    history.store(out, null);
+                } finally {
+                    out.close();
+                }
+                Files.move(tempFile.toPath(), historyFile.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+            } finally {
+                tempFile.delete();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private Properties load() {
+        Properties history = new Properties();
+        try {
+            InputStream in = new FileInputStream(new File(scratchDirectory, HISTORY_FILE_NAME));
+            try {
+                history.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ignored) {
+        }
+        return history;
+    }
+
+}
@@ -27,7 +27,6 @@ import java.io.File;
 import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.URL;
-import java.net.URLClassLoader;
 import java.util.Arrays;
 
 import javax.security.auth.Destroyable;
@@ -35,7 +34,11 @@ import javax.security.auth.Destroyable;
 /**
  * Configuration of a Protex server configuration. This class contains the server URL and credentials necessary for
  * establishing a connection to the Protex server, additionally it maintains a lazily initialized class loader which can
- * be used to load {@code BDSClientDriver} instances.
+ * be used to load {@code BDSClientDriver} instances. The class loader is leased from the {@link ClientLoaderRegistry}
+ * and released when the server URL changes or this configuration is destroyed.
+ * <p>
+ * A configured server may be shared by threads (e.g. the modules of a parallel build); the class loader is initialized
+ * at most once no matter how many threads request it concurrently.
  *
  * @author jgustie
  */
@@ -82,13 +85,16 @@ public class ProtexServer implements Destroyable {
         }
     }
 
-    private String serverUrl;
+    private volatile String serverUrl;
 
-    private String username;
+    private volatile String username;
 
-    private char[] password;
+    private volatile char[] password;
 
-    private ClassLoader clientLoader;
+    /**
+     * The leased client loader, guarded by this server.
+     */
+    private ClientLoaderRegistry.Lease clientLoader;
 
     // TODO We need the location of the trust store in case Protex is using HTTPS with a private certificate
     private File trustStore;
@@ -96,7 +102,20 @@ public class ProtexServer implements Destroyable {
     /**
      * The proxy override, {@code null} means use the system defaults and is different from {@code Proxy.NO_PROXY}.
      */
-    private Proxy proxy;
+    private volatile Proxy proxy;
+
+    /**
+     * The SOAP transport options, timeouts are in milliseconds where a negative value leaves the SDK default in place.
+     */
+    private volatile long connectTimeout = -1L;
+
+    private volatile long receiveTimeout = -1L;
+
+    private volatile boolean keepAlive = true;
+
+    private volatile boolean compressRequests;
+
+    private volatile boolean compressResponses = true;
 
     public ProtexServer(CharSequence password) {
         char[] passwordClone = new char[password.length()];
@@ -110,10 +129,10 @@ public class ProtexServer implements Destroyable {
         return serverUrl;
     }
 
-    public void setServerUrl(String serverUrl) {
+    public synchronized void setServerUrl(String serverUrl) {
         // Clear the client loader whenever the server URL changes
         if (this.serverUrl != null && !this.serverUrl.equals(serverUrl)) {
-            clientLoader = null;
+            releaseClientLoader();
         }
         this.serverUrl = serverUrl;
     }
@@ -132,28 +151,42 @@ public class ProtexServer implements Destroyable {
     }
 
     /**
-     * Returns a class loader for BDS Client on this Protex server.
+     * Returns a class loader for BDS Client on this Protex server. The loader remains open until the server URL changes
+     * or this server is destroyed; commands lease their own loader from the {@link ClientLoaderRegistry} instead.
      */
-    public ClassLoader getClientLoader() throws BuildToolIntegrationException {
+    public synchronized ClassLoader getClientLoader() throws BuildToolIntegrationException {
         if (clientLoader == null) {
-            try {
-                String baseUrl = serverUrl;
-                if (!baseUrl.endsWith("/")) {
-                    baseUrl += "/";
-                }
-
-                URL[] urls = new URL[CODE_SOURCE_PATHS.length];
-                int index = 0;
-                for (String codeSourcePath : CODE_SOURCE_PATHS) {
-                    urls[index++] = ProxyUtil.forceProxy(new URL(baseUrl + codeSourcePath), proxy);
-                }
-
-                clientLoader = URLClassLoader.newInstance(urls, getClass().getClassLoader());
-            } catch (MalformedURLException e) {
-                throw BuildToolIntegrationException.invalidServerUrl(serverUrl).initCause(e);
+            clientLoader = ClientLoaderRegistry.acquire(getClientCodeSource(), getClass().getClassLoader());
+        }
+        return clientLoader.getLoader();
+    }
+
+    /**
+     * Returns the locations of the BDS Client code on this Protex server.
+     */
+    URL[] getClientCodeSource() throws BuildToolIntegrationException {
+        try {
+            String baseUrl = serverUrl;
+            if (!baseUrl.endsWith("/")) {
+                baseUrl += "/";
+            }
+
+            URL[] urls = new URL[CODE_SOURCE_PATHS.length];
+            int index = 0;
+            for (String codeSourcePath : CODE_SOURCE_PATHS) {
+                urls[index++] = ProxyUtil.forceProxy(new URL(baseUrl + codeSourcePath), proxy);
             }
+            return urls;
+        } catch (MalformedURLException e) {
+            throw BuildToolIntegrationException.invalidServerUrl(serverUrl).initCause(e);
+        }
+    }
+
+    private void releaseClientLoader() {
+        if (clientLoader != null) {
+            clientLoader.close();
+            clientLoader = null;
         }
-        return clientLoader;
     }
 
     /**
@@ -174,12 +207,80 @@ public class ProtexServer implements Destroyable {
         return proxy;
     }
 
+    /**
+     * Returns the time in milliseconds to wait for a SOAP connection to be established, negative for the SDK default.
+     */
+    public long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Returns the time in milliseconds to wait for a SOAP response, negative for the SDK default. Report generation on
+     * large projects can take several minutes.
+     */
+    public long getReceiveTimeout() {
+        return receiveTimeout;
+    }
+
+    public void setReceiveTimeout(long receiveTimeout) {
+        this.receiveTimeout = receiveTimeout;
+    }
+
+    /**
+     * Returns {@code true} if SOAP connections are kept alive for reuse by subsequent calls (the default). The number of
+     * idle connections kept per destination is a JVM-wide setting, builds making many concurrent calls may want to raise
+     * the {@code http.maxConnections} system property (e.g. on the command line) from its default of 5.
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Returns {@code true} if large SOAP requests are sent gzip compressed, the server must accept compressed requests.
+     */
+    public boolean isCompressRequests() {
+        return compressRequests;
+    }
+
+    public void setCompressRequests(boolean compressRequests) {
+        this.compressRequests = compressRequests;
+    }
+
+    /**
+     * Returns {@code true} if SOAP responses may be gzip compressed by the server (the default).
+     */
+    public boolean isCompressResponses() {
+        return compressResponses;
+    }
+
+    public void setCompressResponses(boolean compressResponses) {
+        this.compressResponses = compressResponses;
+    }
+
+    /**
+     * Returns a description of the transport options, servers with the same description configure ports identically.
+     */
+    String describeTransport() {
+        return "connectTimeout=" + connectTimeout + ",receiveTimeout=" + receiveTimeout + ",keepAlive=" + keepAlive + ",compressRequests="
+                + compressRequests + ",compressResponses=" + compressResponses;
+    }
+
     @Override
-    public void destroy() {
+    public synchronized void destroy() {
         checkDestroyed();
+        // Discard any shared proxy (and its copy of the password) only this configuration was using
+        SessionRegistry.forget(this);
         Arrays.fill(password, '\0');
         password = null;
-        clientLoader = null;
+        releaseClientLoader();
         proxy = null;
     }
 
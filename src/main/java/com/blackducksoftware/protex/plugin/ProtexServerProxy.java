@@ -23,9 +23,30 @@
  */
 package com.blackducksoftware.protex.plugin;
 
+import org.apache.cxf.endpoint.Client;
+import org.apache.cxf.frontend.ClientProxy;
+import org.apache.cxf.transport.common.gzip.GZIPInInterceptor;
+import org.apache.cxf.transport.common.gzip.GZIPOutInterceptor;
+import org.apache.cxf.transport.http.HTTPConduit;
+import org.apache.cxf.transports.http.configuration.ConnectionType;
+import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
+
+import com.blackducksoftware.sdk.protex.component.ComponentApi;
+import com.blackducksoftware.sdk.protex.component.custom.CustomComponentManagementApi;
+import com.blackducksoftware.sdk.protex.policy.externalid.ExternalIdApi;
+import com.blackducksoftware.sdk.protex.project.ProjectApi;
+import com.blackducksoftware.sdk.protex.project.bom.BomApi;
+import com.blackducksoftware.sdk.protex.report.ReportApi;
+import com.blackducksoftware.sdk.protex.user.UserApi;
+
 /**
  * The Protex SDK server proxy instance, extended to accept the build tool integration server configuration. We also
  * change the login type to ensure access for those without an SDK license.
+ * <p>
+ * A single proxy is shared by every thread using a service. Each port used by the tasks is created (and the transport
+ * options of the server configuration applied to it) the first time it is needed and reused afterwards, so workflows
+ * only pay for the APIs they actually use. Port creation is serialized; the ports themselves (CXF client proxies) may
+ * be invoked concurrently since we never change their request context.
  *
  * @author jgustie
  */
@@ -33,6 +54,23 @@ public final class ProtexServerProxy extends com.blackducksoftware.sdk.protex.cl
 
     private final ProtexServer server;
 
+    /**
+     * The ports, each created and configured the first time it is needed and guarded by this proxy.
+     */
+    private ProjectApi projectApi;
+
+    private ReportApi reportApi;
+
+    private ExternalIdApi externalIdApi;
+
+    private BomApi bomApi;
+
+    private ComponentApi componentApi;
+
+    private CustomComponentManagementApi customComponentManagementApi;
+
+    private UserApi userApi;
+
     ProtexServerProxy(ProtexServer server) {
         super(server.getServerUrl(), server.getUsername(), server.getPassword().toString());
         this.server = server;
@@ -62,4 +100,92 @@ public final class ProtexServerProxy extends com.blackducksoftware.sdk.protex.cl
         return server;
     }
 
+    @Override
+    public synchronized ProjectApi getProjectApi() {
+        if (projectApi == null) {
+            projectApi = configure(super.getProjectApi());
+        }
+        return projectApi;
+    }
+
+    @Override
+    public synchronized ReportApi getReportApi() {
+        if (reportApi == null) {
+            reportApi = configure(super.getReportApi());
+        }
+        return reportApi;
+    }
+
+    @Override
+    public synchronized ExternalIdApi getExternalIdApi() {
+        if (externalIdApi == null) {
+            externalIdApi = configure(super.getExternalIdApi());
+        }
+        return externalIdApi;
+    }
+
+    @Override
+    public synchronized BomApi getBomApi() {
+        if (bomApi == null) {
+            bomApi = configure(super.getBomApi());
+        }
+        return bomApi;
+    }
+
+    @Override
+    public synchronized ComponentApi getComponentApi() {
+        if (componentApi == null) {
+            componentApi = configure(super.getComponentApi());
+        }
+        return componentApi;
+    }
+
+    @Override
+    public synchronized CustomComponentManagementApi getCustomComponentManagementApi() {
+        if (customComponentManagementApi == null) {
+            customComponentManagementApi = configure(super.getCustomComponentManagementApi());
+        }
+        return customComponentManagementApi;
+    }
+
+    @Override
+    public synchronized UserApi getUserApi() {
+        if (userApi == null) {
+            userApi = configure(super.getUserApi());
+        }
+        return userApi;
+    }
+
+    /**
+     * Applies the transport options to a new port.
+     */
+    private <T> T configure(T port) {
+        if (port != null) {
+            Client client = ClientProxy.getClient(port);
+            if (client.getConduit() instanceof HTTPConduit) {
+                HTTPConduit conduit = (HTTPConduit) client.getConduit();
+                HTTPClientPolicy policy = conduit.getClient() != null ? conduit.getClient() : new HTTPClientPolicy();
+                if (server.getConnectTimeout() >= 0L) {
+                    policy.setConnectionTimeout(server.getConnectTimeout());
+                }
+                if (server.getReceiveTimeout() >= 0L) {
+                    policy.setReceiveTimeout(server.getReceiveTimeout());
+                }
+                policy.setConnection(server.isKeepAlive() ? ConnectionType.KEEP_ALIVE : ConnectionType.CLOSE);
+                if (server.isCompressResponses()) {
+                    policy.setAcceptEncoding("gzip");
+                }
+                conduit.setClient(policy);
+            }
+            if (server.isCompressResponses()) {
+                client.getInInterceptors().add(new GZIPInInterceptor());
+            }
+            if (server.isCompressRequests()) {
+                // Only requests over the default threshold (1KB) are compressed
+                client.getOutInterceptors().add(new GZIPOutInterceptor());
+            }
+        }
+        return port;
+    }
+
 }
@@ -0,0 +1,185 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * The minimal class path for the separate {@code bdstool} process. Only the (dependency-free) runner classes are
+ * needed in the child JVM, so rather than handing it the code source of the whole plugin (which may not even be a
+ * file) we extract those classes into a small JAR in a cache directory. The JAR is named by the digest of its contents
+ * so different versions of this library can share the cache directory.
+ * <p>
+ * The build also produces these classes as the "runner" classified artifact.
+ */
+final class RunnerJar {
+
+    /**
+     * The top level classes required by the runner, nested and anonymous classes are included automatically.
+     */
+    private static final Class<?>[] RUNNER_CLASSES = { BDSToolRemoteRunner.class, BDSToolSource.class, BDSToolPlumbing.class };
+
+    /**
+     * The extracted JAR, {@code null} if extraction has not been attempted or failed.
+     */
+    private static File runnerJar;
+
+    private RunnerJar() {
+    }
+
+    /**
+     * Returns the runner JAR, extracting it if necessary. Returns {@code null} if the JAR could not be created. The JAR
+     * is extracted again if it has gone missing, e.g. because a temporary file cleaner removed it from a long running
+     * host.
+     */
+    static synchronized File extract() {
+        if (runnerJar == null || !runnerJar.isFile()) {
+            try {
+                runnerJar = create(new File(System.getProperty("java.io.tmpdir"), "bdstool"));
+            } catch (IOException e) {
+                runnerJar = null;
+            }
+        }
+        return runnerJar;
+    }
+
+    private static File create(File directory) throws IOException {
+        Map<String, byte[]> entries = new TreeMap<String, byte[]>();
+        for (Class<?> type : RUNNER_CLASSES) {
+            collect(type, entries);
+        }
+
+        File jar = new File(directory, "runner-" + digest(entries) + ".jar");
+        if (jar.isFile()) {
+            return jar;
+        }
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, BDSToolRemoteRunner.class.getName());
+
+        // Write to a temporary file and move it into place so other processes never see a partial JAR
+        directory.mkdirs();
+        File tempFile = File.createTempFile("runner-", ".tmp", directory);
+        try {
+            JarOutputStream out = new JarOutputStream(new FileOutputStream(tempFile), manifest);
+            try {
+                for (Entry<String, byte[]> entry : entries.entrySet()) {
+                    out.putNextEntry(new JarEntry(entry.getKey()));
+                    out.write(entry.getValue());
+                    out.closeEntry();
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(tempFile.toPath(), jar.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+        return jar;
+    }
+
+    /**
+     * Collects the class file of the supplied type and all of its nested and anonymous classes.
+     */
+    private static void collect(Class<?> type, Map<String, byte[]> entries) throws IOException {
+        String name = type.getName().replace('.', '/');
+        byte[] classFile = read(name + ".class");
+        if (classFile == null) {
+            throw new FileNotFoundException(name + ".class");
+        }
+        entries.put(name + ".class", classFile);
+
+        for (Class<?> nestedType : type.getDeclaredClasses()) {
+            collect(nestedType, entries);
+        }
+
+        // Anonymous classes (including enum constant bodies) are not declared, probe using the compiler's numbering
+        for (int i = 1;; ++i) {
+            byte[] anonymousClassFile = read(name + "$" + i + ".class");
+            if (anonymousClassFile == null) {
+                break;
+            }
+            entries.put(name + "$" + i + ".class", anonymousClassFile);
+        }
+    }
+
+    /**
+     * Reads a class file resource, returning {@code null} if it does not exist.
+     */
+    private static byte[] read(String resourceName) throws IOException {
+        InputStream in = RunnerJar.class.getResourceAsStream("/" + resourceName);
+        if (in == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns a hex digest of the JAR contents.
+     */
+    private static String digest(Map<String, byte[]> entries) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (Entry<String, byte[]> entry : entries.entrySet()) {
+                digest.update(entry.getKey().getBytes(UTF_8));
+                digest.update(entry.getValue());
+            }
+            return String.format("%040x", new BigInteger(1, digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required", e);
+        }
+    }
+
+}
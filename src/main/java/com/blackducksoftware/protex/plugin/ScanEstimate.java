@@ -0,0 +1,80 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The size of the input to an analysis, measured before {@code bdstool} is started. Estimates are delivered as the
+ * {@value #ESTIMATE} status of the analysis initiated event and are available to execution engines through the
+ * command request, so progress displays and schedulers can plan from the size of the input.
+ *
+ * @author jgustie
+ */
+public final class ScanEstimate {
+
+    /**
+     * The status key of the estimate on the analysis initiated event.
+     */
+    public static final String ESTIMATE = "estimate";
+
+    private final long fileCount;
+
+    private final long totalBytes;
+
+    private final Map<String, Long> extensions;
+
+    /**
+     * Creates a new estimate. The histogram counts files by lower case extension (without the dot), files without an
+     * extension are counted under the empty string.
+     */
+    public ScanEstimate(long fileCount, long totalBytes, Map<String, Long> extensions) {
+        this.fileCount = fileCount;
+        this.totalBytes = totalBytes;
+        this.extensions = Collections.unmodifiableMap(new TreeMap<String, Long>(extensions));
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Returns the number of files for each extension, sorted by extension.
+     */
+    public Map<String, Long> getExtensions() {
+        return extensions;
+    }
+
+    @Override
+    public String toString() {
+        return fileCount + " files, " + totalBytes + " bytes";
+    }
+
+}
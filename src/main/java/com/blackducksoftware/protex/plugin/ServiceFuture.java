@@ -0,0 +1,115 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The pending result of an asynchronous service call. In addition to the usual {@code Future} methods, callbacks may
+ * be registered to run when the call completes so work can be chained without blocking a thread on {@link #get()}.
+ *
+ * @author jgustie
+ * @see AsyncBuildToolIntegrationService
+ */
+public final class ServiceFuture<V> extends FutureTask<V> {
+
+    /**
+     * A callback invoked when a service call completes.
+     */
+    public interface Callback<V> {
+
+        /**
+         * The call completed successfully.
+         */
+        void onSuccess(V result);
+
+        /**
+         * The call failed or was cancelled; typically the failure is a {@link BuildToolIntegrationException}.
+         */
+        void onFailure(Throwable failure);
+
+    }
+
+    /**
+     * The callbacks waiting for completion, {@code null} once they have been run.
+     */
+    private List<Callback<? super V>> callbacks = new ArrayList<Callback<? super V>>();
+
+    ServiceFuture(Callable<V> callable) {
+        super(callable);
+    }
+
+    /**
+     * Registers a callback to run when the call completes. Callbacks run on the thread which completes the call, or
+     * immediately on the current thread if the call has already completed; they should be quick or hand off to their
+     * own executor.
+     */
+    public ServiceFuture<V> onCompletion(Callback<? super V> callback) {
+        synchronized (this) {
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        complete(callback);
+        return this;
+    }
+
+    @Override
+    protected void done() {
+        List<Callback<? super V>> completed;
+        synchronized (this) {
+            completed = callbacks;
+            callbacks = null;
+        }
+        for (Callback<? super V> callback : completed) {
+            complete(callback);
+        }
+    }
+
+    private void complete(Callback<? super V> callback) {
+        V result;
+        try {
+            result = get();
+        } catch (ExecutionException e) {
+            callback.onFailure(e.getCause());
+            return;
+        } catch (CancellationException e) {
+            callback.onFailure(e);
+            return;
+        } catch (InterruptedException e) {
+            // Not possible, the task is done
+            Thread.currentThread().interrupt();
+            callback.onFailure(e);
+            return;
+        }
+        callback.onSuccess(result);
+    }
+
+}
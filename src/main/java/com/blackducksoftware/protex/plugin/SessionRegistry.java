@@ -0,0 +1,282 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A registry of the SDK proxies used to talk to Protex servers. Proxies are shared by reference count, keyed by server
+ * URL, user name, a digest of the password, the HTTP proxy and the transport options, so every service instance in the
+ * JVM (e.g. one per Maven module or Jenkins step) connecting to the same server as the same user pays for the CXF
+ * client set up once.
+ * Once a proxy has not been leased for the idle timeout it is discarded; proxies older than the maximum age are not
+ * handed out again so long running hosts periodically start over with fresh clients.
+ * <p>
+ * Each shared proxy is bound to a private copy of the server configuration. Destroying the configuration a service
+ * was created with does not affect other services sharing the proxy; once no configuration the proxy was leased for
+ * remains, the proxy and its copy of the password are discarded as soon as they are no longer in use.
+ * <p>
+ * Services lease a proxy for the duration of each operation rather than for their own lifetime, so a service which is
+ * never closed cannot keep a proxy (or an expired one) alive.
+ *
+ * @author jgustie
+ */
+final class SessionRegistry {
+
+    /**
+     * The time a proxy is kept after the last lease has been released.
+     */
+    private static final long IDLE_TIMEOUT_MINUTES = 5L;
+
+    /**
+     * The time after which a proxy is no longer handed out.
+     */
+    private static final long MAX_AGE_MINUTES = 60L;
+
+    /**
+     * The proxies currently in use or idle, keyed by server and credentials.
+     */
+    private static final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /**
+     * The executor used to discard idle proxies, lazily initialized.
+     */
+    private static ScheduledThreadPoolExecutor closer;
+
+    private SessionRegistry() {
+    }
+
+    /**
+     * A lease on a shared proxy. The lease must be closed when the proxy is no longer needed.
+     */
+    static final class Lease {
+        private final Entry entry;
+
+        private boolean closed;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * Returns the leased proxy.
+         */
+        ProtexServerProxy getProxy() {
+            synchronized (SessionRegistry.class) {
+                if (closed) {
+                    throw new IllegalStateException("closed");
+                }
+                return entry.proxy;
+            }
+        }
+
+        /**
+         * Releases this lease, closing the same lease more than once has no effect.
+         */
+        void close() {
+            synchronized (SessionRegistry.class) {
+                if (!closed) {
+                    closed = true;
+                    release(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * A shared proxy and its reference count.
+     */
+    private static final class Entry {
+        private final String key;
+
+        private final ProtexServerProxy proxy;
+
+        private final long created = System.nanoTime();
+
+        /**
+         * The configurations this proxy has been leased for, held weakly so abandoned configurations do not count.
+         */
+        private final Set<ProtexServer> sources = Collections.newSetFromMap(new WeakHashMap<ProtexServer, Boolean>());
+
+        private int references;
+
+        private ScheduledFuture<?> idleClose;
+
+        private Entry(String key, ProtexServerProxy proxy) {
+            this.key = key;
+            this.proxy = proxy;
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() - created >= TimeUnit.MINUTES.toNanos(MAX_AGE_MINUTES);
+        }
+    }
+
+    /**
+     * Leases a proxy for the supplied server configuration.
+     */
+    static Lease acquire(ProtexServer server) {
+        final String key = key(server);
+        synchronized (SessionRegistry.class) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isExpired()) {
+                // Leave the expired proxy to its current leases
+                entries.remove(key);
+                if (entry.references == 0) {
+                    retire(entry);
+                }
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(key, new ProtexServerProxy(copy(server)));
+                entries.put(key, entry);
+            }
+            if (entry.idleClose != null) {
+                entry.idleClose.cancel(false);
+                entry.idleClose = null;
+            }
+            entry.sources.add(server);
+            entry.references++;
+            return new Lease(entry);
+        }
+    }
+
+    /**
+     * Called when a server configuration is destroyed (before its password is cleared). If no other configuration
+     * uses the same proxy it is no longer handed out and is discarded once its current leases are released.
+     */
+    static void forget(ProtexServer server) {
+        final String key = key(server);
+        synchronized (SessionRegistry.class) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.sources.remove(server) && entry.sources.isEmpty()) {
+                entries.remove(key);
+                if (entry.references == 0) {
+                    retire(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases a reference to the supplied entry, discarding the proxy if it is unused.
+     */
+    private static void release(final Entry entry) {
+        if (--entry.references > 0) {
+            return;
+        } else if (entries.get(entry.key) != entry) {
+            // The entry has expired or was forgotten, there is no point in waiting
+            retire(entry);
+        } else {
+            entry.idleClose = closer().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (SessionRegistry.class) {
+                        if (entry.references == 0 && entries.get(entry.key) == entry) {
+                            entries.remove(entry.key);
+                            retire(entry);
+                        }
+                    }
+                }
+            }, IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Discards a proxy, the SDK has nothing to close so we only release the private server configuration.
+     */
+    private static void retire(Entry entry) {
+        if (entry.idleClose != null) {
+            entry.idleClose.cancel(false);
+            entry.idleClose = null;
+        }
+        ProtexServer server = entry.proxy.server();
+        if (!server.isDestroyed()) {
+            server.destroy();
+        }
+    }
+
+    /**
+     * Returns a copy of the server configuration owned by the registry.
+     */
+    private static ProtexServer copy(ProtexServer server) {
+        ProtexServer copy = new ProtexServer(server.getPassword());
+        copy.setServerUrl(server.getServerUrl());
+        copy.setUsername(server.getUsername());
+        copy.setProxy(server.getProxy());
+        copy.setConnectTimeout(server.getConnectTimeout());
+        copy.setReceiveTimeout(server.getReceiveTimeout());
+        copy.setKeepAlive(server.isKeepAlive());
+        copy.setCompressRequests(server.isCompressRequests());
+        copy.setCompressResponses(server.isCompressResponses());
+        return copy;
+    }
+
+    /**
+     * Returns the key of a server configuration, the password is only included as a digest.
+     */
+    private static String key(ProtexServer server) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            CharSequence password = server.getPassword();
+            for (int i = 0; i < password.length(); ++i) {
+                char c = password.charAt(i);
+                digest.update((byte) (c >> 8));
+                digest.update((byte) c);
+            }
+            return server.getServerUrl() + "\n" + server.getUsername() + "\n" + String.format("%040x", new BigInteger(1, digest.digest()))
+                    + "\n" + server.getProxy() + "\n" + server.describeTransport();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required", e);
+        }
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor closer() {
+        if (closer == null) {
+            closer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Protex Session Closer");
+                    thread.setDaemon(true);
+                    thread.setContextClassLoader(null);
+                    return thread;
+                }
+            });
+            closer.setRemoveOnCancelPolicy(true);
+        }
+        return closer;
+    }
+
+}
@@ -32,6 +32,9 @@ import org.apache.commons.lang3.SystemUtils;
  * the console, we use ANSI control sequences to overwrite this line. In addition to status, there is basic support for
  * other log levels. The default implementations always just prints out to the console, subclasses can forward these
  * methods to more robust loggers if desired.
+ * <p>
+ * Status and log messages may come from several threads (e.g. concurrent analyses), each message is written in its
+ * entirety before the next one starts.
  *
  * @author jgustie
  */
@@ -126,7 +129,7 @@ public class StatusLogger {
 		log("[ERROR]", message, args);
 	}
 
-	private void log(final String level, final String message, final Object... args) {
+	private synchronized void log(final String level, final String message, final Object... args) {
 		if (console != null) {
 			console.flush();
 			if (hasStatus && useAnsi) {
@@ -140,7 +143,7 @@ public class StatusLogger {
 		hasStatus = false;
 	}
 
-	public void status(final String message, final Object... args) {
+	public synchronized void status(final String message, final Object... args) {
 		if (console != null) {
 			final String log = (hasStatus || !useAnsi ? "" : "%n") + (useAnsi ? ANSI_STATUS_LOG : NON_ANSI_STATUS_LOG);
 			console.format(log, String.format(message, args));
@@ -0,0 +1,158 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Routes writes to {@code System.out} based on the current thread. The client driver writes directly to standard out,
+ * when multiple commands run in process at the same time each command redirects the output of its thread (and any
+ * threads started from it) to its own sink. Threads which have not been redirected write to the original standard
+ * out.
+ * <p>
+ * Note that only threads created after the redirect inherit it, threads pooled before the command started continue to
+ * write to the original standard out. Threads created during the command which outlive it (e.g. lazily created pool
+ * threads) only inherit a handle on the redirect: once the command restores it, the handle no longer refers to the
+ * command's sink and those threads go back to writing to the original standard out.
+ *
+ * @author jgustie
+ */
+final class SystemOutDemultiplexer extends OutputStream {
+
+    /**
+     * The redirect of the current thread, inherited by child threads.
+     */
+    private static final InheritableThreadLocal<Redirect> current = new InheritableThreadLocal<Redirect>();
+
+    /**
+     * The demultiplexer installed as {@code System.out}, lazily initialized.
+     */
+    private static SystemOutDemultiplexer installed;
+
+    /**
+     * The standard out which was replaced.
+     */
+    private final PrintStream original;
+
+    private SystemOutDemultiplexer(PrintStream original) {
+        this.original = original;
+    }
+
+    /**
+     * A redirect of standard out, the sink is cleared when the redirect is restored so threads which inherited the
+     * redirect do not retain (or write to) the sink of a finished command.
+     */
+    static final class Redirect {
+        private volatile OutputStream sink;
+
+        private final Redirect previous;
+
+        private Redirect(OutputStream sink, Redirect previous) {
+            this.sink = sink;
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * Redirects standard out for the current thread (and threads it creates) to the supplied sink, returning the
+     * redirect which must be passed to {@link #restore(Redirect)}.
+     */
+    static Redirect redirect(OutputStream newSink) {
+        install();
+        Redirect redirect = new Redirect(newSink, current.get());
+        current.set(redirect);
+        return redirect;
+    }
+
+    /**
+     * Ends a redirect, restoring the previous sink of the current thread.
+     */
+    static void restore(Redirect redirect) {
+        redirect.sink = null;
+        if (redirect.previous != null) {
+            current.set(redirect.previous);
+        } else {
+            current.remove();
+        }
+    }
+
+    /**
+     * Returns the standard out which is not subject to redirection.
+     */
+    static PrintStream original() {
+        synchronized (SystemOutDemultiplexer.class) {
+            return installed != null ? installed.original : System.out;
+        }
+    }
+
+    private static synchronized void install() {
+        if (installed == null) {
+            // Do not auto-flush, each sink decides when to pass output along
+            installed = new SystemOutDemultiplexer(System.out);
+            System.setOut(new PrintStream(installed, false));
+        }
+    }
+
+    private OutputStream target() {
+        Redirect redirect = current.get();
+        while (redirect != null) {
+            OutputStream sink = redirect.sink;
+            if (sink != null) {
+                return sink;
+            }
+            // The redirect has been restored but this thread outlived it, fall back to the previous one
+            redirect = redirect.previous;
+            if (redirect != null) {
+                current.set(redirect);
+            } else {
+                current.remove();
+            }
+        }
+        return original;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        target().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        target().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target().flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Never close the original standard out on behalf of a single command
+        flush();
+    }
+
+}
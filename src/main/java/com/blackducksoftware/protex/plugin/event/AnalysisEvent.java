@@ -29,18 +29,41 @@ import java.util.Map;
 /**
  * An event that occurred during analysis. Currently this just contains a map that can contain anything. Generally it
  * contains the contents of progress notifier map coming from the BDS client (see {@code BDSClientProgressNotifier}).
+ * Progress status may be a view of the client's map, listeners should copy it if they need it after they return.
+ * <p>
+ * Every event of a single analysis carries the same {@linkplain #analysis() analysis} object, listeners receiving the
+ * events of concurrent analyses (e.g. the shards of a sharded analysis) can use it to keep their state per analysis.
  *
  * @author jgustie
  */
 public class AnalysisEvent extends EventObject {
 
+    /**
+     * The analysis of events created without one.
+     */
+    private static final Object UNIDENTIFIED = new Object();
+
+    private final Object analysis;
+
     private final Map<String, ?> status;
 
     public AnalysisEvent(Map<String, ?> status) {
+        this(UNIDENTIFIED, status);
+    }
+
+    public AnalysisEvent(Object analysis, Map<String, ?> status) {
         super(status);
+        this.analysis = analysis;
         this.status = status;
     }
 
+    /**
+     * Returns an object identifying the analysis this event belongs to, suitable for use as a map key.
+     */
+    public Object analysis() {
+        return analysis;
+    }
+
     public Map<String, ?> status() {
         return status;
     }
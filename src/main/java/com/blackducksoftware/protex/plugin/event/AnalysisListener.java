@@ -27,6 +27,10 @@ import java.util.EventListener;
 
 /**
  * An listener for events related to Protex analysis.
+ * <p>
+ * The events of a single analysis are delivered in order, however a listener registered with a service shared by
+ * concurrent analyses (or used for a sharded analysis) receives their events concurrently and interleaved: it must be
+ * thread-safe and keep any state between events per {@linkplain AnalysisEvent#analysis() analysis}.
  *
  * @author jgustie
  */
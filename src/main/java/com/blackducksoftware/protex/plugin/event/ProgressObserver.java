@@ -23,17 +23,23 @@
  */
 package com.blackducksoftware.protex.plugin.event;
 
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.Set;
 
+import com.blackducksoftware.protex.plugin.BDSToolPlumbing;
 import com.blackducksoftware.protex.plugin.BDSToolPlumbing.ClientDriverNotifier;
 import com.blackducksoftware.protex.plugin.BlackDuckCommand;
 import com.blackducksoftware.protex.plugin.BlackDuckCommand.State;
 import com.blackducksoftware.protex.plugin.BuildToolIntegrationException;
+import com.blackducksoftware.protex.plugin.ScanEstimate;
 
 /**
  * A bridge between the client driver's {@code Observable} model and the analysis event model.
@@ -42,13 +48,47 @@ import com.blackducksoftware.protex.plugin.BuildToolIntegrationException;
  */
 public class ProgressObserver implements Observer {
 
+    /**
+     * The status key of the analyzed directory on the initiated event.
+     */
+    public static final String DIRECTORY = "directory";
+
     /**
      * The collection of registered listeners.
      */
     private final Iterable<AnalysisListener> listeners;
 
+    /**
+     * The status of the initiated event.
+     */
+    private final Map<String, ?> initiatedStatus;
+
     public ProgressObserver(Iterable<AnalysisListener> listeners) {
+        this(listeners, null);
+    }
+
+    /**
+     * Creates a progress observer which includes the supplied estimate (if it is not {@code null}) in the status of the
+     * initiated event.
+     */
+    public ProgressObserver(Iterable<AnalysisListener> listeners, ScanEstimate estimate) {
+        this(listeners, estimate, null);
+    }
+
+    /**
+     * Creates a progress observer which includes the supplied estimate and analyzed directory (if they are not
+     * {@code null}) in the status of the initiated event.
+     */
+    public ProgressObserver(Iterable<AnalysisListener> listeners, ScanEstimate estimate, File directory) {
         this.listeners = listeners;
+        Map<String, Object> status = new HashMap<String, Object>();
+        if (estimate != null) {
+            status.put(ScanEstimate.ESTIMATE, estimate);
+        }
+        if (directory != null) {
+            status.put(DIRECTORY, directory);
+        }
+        this.initiatedStatus = Collections.unmodifiableMap(status);
     }
 
     @Override
@@ -60,12 +100,8 @@ public class ProgressObserver implements Observer {
             // Validate that we got a Map
             checkState(arg instanceof Map, "expected java.util.Map argument");
 
-            // The map may contain FlexCaseInsensitiveObject keys...convert to strings
-            Map<String, Object> state = new LinkedHashMap<String, Object>(((Map<?, ?>) arg).size());
-            for (Entry<?, ?> entry : ((Map<?, ?>) arg).entrySet()) {
-                state.put(entry.getKey().toString(), entry.getValue());
-            }
-            updateProgress(state);
+            // The map may contain FlexCaseInsensitiveObject keys...view with string keys
+            updateProgress(new StringKeyedMap((Map<?, ?>) arg));
         }
     }
 
@@ -78,16 +114,16 @@ public class ProgressObserver implements Observer {
         if (command.state() == State.INITIATED) {
             // Initiation notifications can only pass null, see BlackDuckCommand#notifyInitiated
             checkState(arg == null, "initated with non-null argument");
-            ListenerDispatch.INITIATED.dispatch(listeners, new AnalysisEvent(state));
+            ListenerDispatch.INITIATED.dispatch(listeners, new AnalysisEvent(this, initiatedStatus));
         } else if (command.state() == State.SUCCEEDED) {
             // Success notifications can only pass null, see BlackDuckCommand#notifySucceeded
             checkState(arg == null, "succeeded with non-null argument");
-            ListenerDispatch.SUCCEEDED.dispatch(listeners, new AnalysisEvent(state));
+            ListenerDispatch.SUCCEEDED.dispatch(listeners, new AnalysisEvent(this, state));
         } else if (command.state() == State.FAILED) {
             // Failure notifications can only pass BTIEs, see BlackDuckCommand#notifyFailed
             checkState(arg instanceof BuildToolIntegrationException, "failed with non-BTIE argument");
             state = Collections.singletonMap("exception", arg);
-            ListenerDispatch.FAILED.dispatch(listeners, new AnalysisEvent(state));
+            ListenerDispatch.FAILED.dispatch(listeners, new AnalysisEvent(this, state));
         }
     }
 
@@ -97,10 +133,84 @@ public class ProgressObserver implements Observer {
     private void updateProgress(Map<String, ?> progress) {
         // TODO Check operation_number == 1 instead?
         String file = (String) progress.get("file");
-        if (file != null && file.equals("... assessing work ...")) {
-            ListenerDispatch.STARTED.dispatch(listeners, new AnalysisEvent(progress));
+        if (file != null && file.equals(BDSToolPlumbing.ASSESSING_WORK)) {
+            ListenerDispatch.STARTED.dispatch(listeners, new AnalysisEvent(this, progress));
         } else {
-            ListenerDispatch.PROGRESSED.dispatch(listeners, new AnalysisEvent(progress));
+            ListenerDispatch.PROGRESSED.dispatch(listeners, new AnalysisEvent(this, progress));
+        }
+    }
+
+    /**
+     * A read-only view of a map using the string representation of the original keys. Progress maps only have a handful
+     * of entries so a linear search is cheaper than copying them for every notification. Since this is a view, the
+     * contents are only valid for the duration of the listener call.
+     */
+    private static final class StringKeyedMap extends AbstractMap<String, Object> {
+        private final Map<?, ?> delegate;
+
+        private StringKeyedMap(Map<?, ?> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (key != null) {
+                for (Entry<?, ?> entry : delegate.entrySet()) {
+                    if (key.equals(entry.getKey().toString())) {
+                        return entry.getValue();
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (key != null) {
+                for (Object delegateKey : delegate.keySet()) {
+                    if (key.equals(delegateKey.toString())) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    final Iterator<? extends Entry<?, ?>> entries = delegate.entrySet().iterator();
+                    return new Iterator<Entry<String, Object>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return entries.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            Entry<?, ?> entry = entries.next();
+                            return new SimpleImmutableEntry<String, Object>(entry.getKey().toString(), entry.getValue());
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return delegate.size();
+                }
+            };
         }
     }
 
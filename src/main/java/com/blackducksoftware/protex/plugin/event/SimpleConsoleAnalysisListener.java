@@ -23,11 +23,16 @@
  */
 package com.blackducksoftware.protex.plugin.event;
 
+import java.util.Collections;
 import java.util.Locale;
 import java.util.ResourceBundle;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.blackducksoftware.protex.plugin.BDSToolPlumbing;
+import com.blackducksoftware.protex.plugin.ScanEstimate;
 import com.blackducksoftware.protex.plugin.StatusLogger;
+import com.blackducksoftware.protex.plugin.tasks.FingerprintCache;
 
 public class SimpleConsoleAnalysisListener extends AbstractAnalysisListener {
 
@@ -41,9 +46,17 @@ public class SimpleConsoleAnalysisListener extends AbstractAnalysisListener {
 
     protected static final String FILE = "file";
 
+    /**
+     * The pseudo-file named by the initial status, before any real file is being worked on.
+     */
+    protected static final String ASSESSING_WORK = BDSToolPlumbing.ASSESSING_WORK;
+
     private final StatusLogger logger;
 
-    private final AtomicBoolean seenMaxOperation = new AtomicBoolean();
+    /**
+     * The analyses which have reported their last operation.
+     */
+    private final Set<Object> seenMaxOperation = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
 
     /**
      * Creates a simple console analysis listener. The supplied console may be {@code null}.
@@ -66,16 +79,21 @@ public class SimpleConsoleAnalysisListener extends AbstractAnalysisListener {
 
     @Override
     public void analysisInitiated(AnalysisEvent event) {
-        // At this point we have a Protex project identifier but bdstool has not yet been called
-        logger.status(message("starting"));
-        seenMaxOperation.set(false);
+        // At this point bdstool is being launched, the Protex project identifier may still be resolving
+        Object estimate = event.status().get(ScanEstimate.ESTIMATE);
+        if (estimate instanceof ScanEstimate) {
+            logger.status(message("startingEstimate"), ((ScanEstimate) estimate).getFileCount());
+        } else {
+            logger.status(message("starting"));
+        }
+        seenMaxOperation.remove(event.analysis());
     }
 
     @Override
     public void analysisStarted(AnalysisEvent event) {
         // This is the first notification produced by bdstool and should only be called once
         updateStatus(event);
-        seenMaxOperation.set(false);
+        seenMaxOperation.remove(event.analysis());
     }
 
     @Override
@@ -85,7 +103,7 @@ public class SimpleConsoleAnalysisListener extends AbstractAnalysisListener {
 
         Object operationNumber = event.status().get(OPERATION_NUMBER);
         Object operationNumberMax = event.status().get(OPERATION_NUMBER_MAX);
-        if (operationNumber != null && operationNumber.equals(operationNumberMax) && !seenMaxOperation.getAndSet(true)) {
+        if (operationNumber != null && operationNumber.equals(operationNumberMax) && seenMaxOperation.add(event.analysis())) {
             // This is the last notification before bdstool asks the server to compute the BOM,
             // therefore we will see a longer then average pause until the server is done
             logger.status(message("computingBom"));
@@ -102,7 +120,7 @@ public class SimpleConsoleAnalysisListener extends AbstractAnalysisListener {
         Object file = event.status().get(FILE);
         if (operation != null) {
             // Display the file name if we have one ("assessing work" comes as the initial status)
-            if (file != null && !file.equals("... assessing work ...")) {
+            if (file != null && !file.equals(ASSESSING_WORK)) {
                 logger.status("%s (%s/%s) %s", operation, operationNumber, operationNumberMax, file);
             } else {
                 logger.status("%s (%s/%s)", operation, operationNumber, operationNumberMax);
@@ -115,15 +133,17 @@ public class SimpleConsoleAnalysisListener extends AbstractAnalysisListener {
 
     @Override
     public void analysisSucceeded(AnalysisEvent event) {
-        // At this point bdstool has exited cleanly
+        // At this point bdstool has exited cleanly (or was never started because nothing changed)
+        seenMaxOperation.remove(event.analysis());
         logger.status(message("done"));
-        logger.info(message("success"));
+        logger.info(message(event.status().containsKey(FingerprintCache.SKIPPED) ? "skipped" : "success"));
         logger.info("");
     }
 
     @Override
     public void analysisFailed(AnalysisEvent event) {
         // A failure occurred either in bdstool or while resolving the project identifier
+        seenMaxOperation.remove(event.analysis());
         logger.status(message("done"));
         logger.error(message("failure"));
         logger.info("");
@@ -0,0 +1,317 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.blackducksoftware.protex.plugin.StatusLogger;
+
+/**
+ * An analysis listener which measures how long {@code bdstool} spends on each file. Progress notifications name the
+ * file being worked on, the time until the next file is named is charged to that file (and to its directory). When the
+ * analysis completes the slowest files and directories are logged along with suggested project ignore patterns for
+ * generated or vendored directories (e.g. {@code node_modules}) which account for a large share of the scan time.
+ * <p>
+ * Paths are reported relative to the analyzed directory so nothing above it is ever recommended. Only the slowest
+ * files are retained so memory use is bounded by the number of directories. The time before the first file and between
+ * the last file and the end of the analysis is spent assessing work and computing the bill of materials, it is not
+ * charged to any file. Timings are kept per {@linkplain AnalysisEvent#analysis() analysis} so an instance may be shared
+ * by concurrent analyses (e.g. shards), each analysis is reported separately.
+ *
+ * @author jgustie
+ */
+public class SlowFileAnalysisListener extends AbstractAnalysisListener {
+
+    private static final String BUNDLE_BASE_NAME = "SimpleAnalysisListener";
+
+    /**
+     * The names of directories which typically contain generated or third party code.
+     */
+    private static final Set<String> GENERATED_OR_VENDORED = new HashSet<String>(Arrays.asList("node_modules", "bower_components",
+            "jspm_packages", "vendor", "third_party", "thirdparty", "third-party", "external", "deps", "lib", "libs", "target", "build",
+            "dist", "out", "bin", "obj", "generated", "generated-sources", "gen", ".gradle", ".m2", ".git", ".svn", ".hg", "Pods"));
+
+    /**
+     * The share of the total scan time above which a directory is recommended for ignoring.
+     */
+    private static final double RECOMMENDATION_THRESHOLD = 0.1;
+
+    /**
+     * The time spent on a single path.
+     */
+    private static final class Timing {
+        private final String path;
+
+        private final long nanos;
+
+        private Timing(String path, long nanos) {
+            this.path = path;
+            this.nanos = nanos;
+        }
+    }
+
+    private static final Comparator<Timing> FASTEST_FIRST = new Comparator<Timing>() {
+        @Override
+        public int compare(Timing left, Timing right) {
+            return left.nanos < right.nanos ? -1 : (left.nanos == right.nanos ? 0 : 1);
+        }
+    };
+
+    private final StatusLogger logger;
+
+    private final int limit;
+
+    /**
+     * The analyses in progress.
+     */
+    private final Map<Object, Analysis> analyses = new HashMap<Object, Analysis>();
+
+    /**
+     * The ignore patterns recommended by the last analysis.
+     */
+    private final List<String> recommendedIgnorePatterns = new ArrayList<String>();
+
+    /**
+     * Creates a listener which reports the supplied number of slowest files and directories.
+     */
+    public SlowFileAnalysisListener(StatusLogger logger, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        this.logger = logger;
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the ignore patterns recommended at the end of the last analysis.
+     */
+    public synchronized List<String> getRecommendedIgnorePatterns() {
+        return new ArrayList<String>(recommendedIgnorePatterns);
+    }
+
+    @Override
+    public synchronized void analysisInitiated(AnalysisEvent event) {
+        Object directory = event.status().get(ProgressObserver.DIRECTORY);
+        analyses.put(event.analysis(), new Analysis(directory != null ? directory.toString() : null));
+    }
+
+    @Override
+    public synchronized void analysisStarted(AnalysisEvent event) {
+        Analysis analysis = analyses.get(event.analysis());
+        analyses.put(event.analysis(), new Analysis(analysis != null ? analysis.root : null));
+    }
+
+    @Override
+    public synchronized void analysisProgressed(AnalysisEvent event) {
+        Analysis analysis = analyses.get(event.analysis());
+        if (analysis == null) {
+            analysis = new Analysis(null);
+            analyses.put(event.analysis(), analysis);
+        }
+        Object file = event.status().get(SimpleConsoleAnalysisListener.FILE);
+        if (file != null && !file.equals(analysis.currentFile)) {
+            long now = System.nanoTime();
+            if (analysis.currentFile != null) {
+                analysis.charge(analysis.currentFile, now - analysis.currentStart);
+            }
+            analysis.currentFile = file.equals(SimpleConsoleAnalysisListener.ASSESSING_WORK) ? null : analysis.relativize(file.toString());
+            analysis.currentStart = now;
+        }
+    }
+
+    @Override
+    public synchronized void analysisSucceeded(AnalysisEvent event) {
+        report(analyses.remove(event.analysis()));
+    }
+
+    @Override
+    public synchronized void analysisFailed(AnalysisEvent event) {
+        report(analyses.remove(event.analysis()));
+    }
+
+    /**
+     * The timings of a single analysis.
+     */
+    private final class Analysis {
+        /**
+         * The analyzed directory, {@code null} if it is not known.
+         */
+        private final String root;
+
+        /**
+         * The slowest files seen so far, the fastest of them at the head so it can be evicted.
+         */
+        private final PriorityQueue<Timing> slowestFiles = new PriorityQueue<Timing>(limit + 1, FASTEST_FIRST);
+
+        /**
+         * The time spent on the files directly inside each directory.
+         */
+        private final Map<String, Long> directoryTimes = new HashMap<String, Long>();
+
+        /**
+         * The time spent on everything below directories which look generated or vendored.
+         */
+        private final Map<String, Long> candidateTimes = new HashMap<String, Long>();
+
+        private String currentFile;
+
+        private long currentStart;
+
+        private long totalNanos;
+
+        private Analysis(String root) {
+            this.root = root;
+        }
+
+        /**
+         * Returns the path of a file relative to the analyzed directory, if it is below it.
+         */
+        private String relativize(String file) {
+            if (root != null && file.length() > root.length() && file.startsWith(root) && lastSeparator(file, root.length() + 1) == root.length()) {
+                return file.substring(root.length() + 1);
+            }
+            return file;
+        }
+
+        /**
+         * Charges time spent on a file to the file and its directories.
+         */
+        private void charge(String file, long nanos) {
+            totalNanos += nanos;
+            slowestFiles.add(new Timing(file, nanos));
+            if (slowestFiles.size() > limit) {
+                slowestFiles.poll();
+            }
+
+            int end = lastSeparator(file, file.length());
+            add(directoryTimes, end > 0 ? file.substring(0, end) : ".", nanos);
+            while (end > 0) {
+                int start = lastSeparator(file, end) + 1;
+                if (GENERATED_OR_VENDORED.contains(file.substring(start, end))) {
+                    add(candidateTimes, file.substring(0, end), nanos);
+                }
+                end = start - 1;
+            }
+        }
+    }
+
+    /**
+     * Logs the slowest paths and the recommended ignore patterns of an analysis.
+     */
+    private void report(Analysis analysis) {
+        if (analysis == null || analysis.totalNanos == 0L) {
+            return;
+        }
+        recommendedIgnorePatterns.clear();
+
+        List<Timing> files = new ArrayList<Timing>(analysis.slowestFiles);
+        Collections.sort(files, Collections.reverseOrder(FASTEST_FIRST));
+        logger.info(message("slowestFiles"));
+        for (Timing timing : files) {
+            logger.info(message("slowPath"), TimeUnit.NANOSECONDS.toMillis(timing.nanos), timing.path);
+        }
+
+        logger.info(message("slowestDirectories"));
+        for (Timing timing : slowest(analysis.directoryTimes)) {
+            logger.info(message("slowPath"), TimeUnit.NANOSECONDS.toMillis(timing.nanos), timing.path);
+        }
+
+        // Recommend the outermost candidates, ignoring those also ignores everything below them; a candidate containing
+        // every file would ignore the entire analysis
+        final long totalNanos = analysis.totalNanos;
+        List<Timing> candidates = new ArrayList<Timing>();
+        for (Timing timing : slowest(analysis.candidateTimes)) {
+            if (timing.nanos >= totalNanos * RECOMMENDATION_THRESHOLD && timing.nanos < totalNanos) {
+                candidates.add(timing);
+            }
+        }
+        for (Timing candidate : candidates) {
+            boolean outermost = true;
+            for (Timing other : candidates) {
+                outermost &= !isAncestor(other.path, candidate.path);
+            }
+            if (outermost) {
+                String name = candidate.path.substring(lastSeparator(candidate.path, candidate.path.length()) + 1);
+                String pattern = name + "/";
+                if (!recommendedIgnorePatterns.contains(pattern)) {
+                    recommendedIgnorePatterns.add(pattern);
+                    logger.info(message("recommendIgnore"), pattern, Math.round(candidate.nanos * 100.0 / totalNanos), candidate.path);
+                }
+            }
+        }
+        logger.info("");
+    }
+
+    /**
+     * Returns the slowest entries of a timing map, slowest first.
+     */
+    private List<Timing> slowest(Map<String, Long> times) {
+        PriorityQueue<Timing> heap = new PriorityQueue<Timing>(limit + 1, FASTEST_FIRST);
+        for (Map.Entry<String, Long> entry : times.entrySet()) {
+            heap.add(new Timing(entry.getKey(), entry.getValue()));
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+        List<Timing> result = new ArrayList<Timing>(heap);
+        Collections.sort(result, Collections.reverseOrder(FASTEST_FIRST));
+        return result;
+    }
+
+    /**
+     * Returns a message for display in the log.
+     */
+    protected String message(String key) {
+        return ResourceBundle.getBundle(BUNDLE_BASE_NAME, Locale.getDefault(), getClass().getClassLoader()).getString(key);
+    }
+
+    private static void add(Map<String, Long> times, String path, long nanos) {
+        Long time = times.get(path);
+        times.put(path, time != null ? time + nanos : nanos);
+    }
+
+    /**
+     * Returns the index of the last path separator before the supplied index, {@code bdstool} may use either.
+     */
+    private static int lastSeparator(String path, int before) {
+        return Math.max(path.lastIndexOf('/', before - 1), path.lastIndexOf('\\', before - 1));
+    }
+
+    private static boolean isAncestor(String ancestor, String path) {
+        return path.length() > ancestor.length() && path.startsWith(ancestor) && lastSeparator(path, ancestor.length() + 1) == ancestor.length();
+    }
+
+}
@@ -44,10 +44,16 @@ public abstract class AbstractCreateTask<V> extends AbstractTask<V> {
 
     private final ExternalNamespace namespace;
 
-    AbstractCreateTask(ProtexServerProxy proxy, ProtexProject project, ExternalNamespace namespace) {
+    /**
+     * The cache of external identifier mappings, may be {@code null}.
+     */
+    private final ExternalIdCache cache;
+
+    AbstractCreateTask(ProtexServerProxy proxy, ProtexProject project, ExternalNamespace namespace, ExternalIdCache cache) {
         super(proxy);
         this.project = project;
         this.namespace = namespace;
+        this.cache = cache;
     }
 
     protected void remoteCreateExternalIdMapping(ProtexObjectType objectType) throws BuildToolIntegrationException {
@@ -62,6 +68,11 @@ public abstract class AbstractCreateTask<V> extends AbstractTask<V> {
             externalIdMapping.setExternalObjectId(project.getExternalId());
             externalIdMapping.setProtexObjectKey(key);
             proxy().getExternalIdApi().createExternalIdMapping(namespace.getExternalNamespaceKey(), externalIdMapping);
+
+            // Replace any cached (likely negative) lookup of the new mapping
+            if (cache != null) {
+                cache.put(proxy().getServerUrl(), namespace.getExternalNamespaceKey(), objectType, project.getExternalId(), project.getProjectId());
+            }
         } catch (SdkFault fault) {
             switch (fault.getFaultInfo().getErrorCode()) {
             default:
@@ -74,6 +85,9 @@ public abstract class AbstractCreateTask<V> extends AbstractTask<V> {
      * Makes sure the system namespace exists in the external mapping service.
      */
     private void ensureExternalSystemId() throws SdkFault {
+        if (cache != null && cache.hasNamespace(proxy().getServerUrl(), namespace.getExternalNamespaceKey())) {
+            return;
+        }
         try {
             proxy().getExternalIdApi().getExternalNamespace(namespace.getExternalNamespaceKey());
         } catch (SdkFault fault) {
@@ -87,6 +101,9 @@ public abstract class AbstractCreateTask<V> extends AbstractTask<V> {
                 throw fault;
             }
         }
+        if (cache != null) {
+            cache.putNamespace(proxy().getServerUrl(), namespace.getExternalNamespaceKey());
+        }
     }
 
 }
@@ -24,43 +24,243 @@
 package com.blackducksoftware.protex.plugin.tasks;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import com.blackducksoftware.protex.plugin.BlackDuckCommand;
 import com.blackducksoftware.protex.plugin.BlackDuckCommandBuilder;
+import com.blackducksoftware.protex.plugin.BlackDuckCommandBuilder.AnalyzeCommandBuilder;
 import com.blackducksoftware.protex.plugin.BuildToolIntegrationException;
 import com.blackducksoftware.protex.plugin.ProtexServerProxy;
+import com.blackducksoftware.protex.plugin.ScanEstimate;
+import com.blackducksoftware.protex.plugin.event.AnalysisEvent;
 import com.blackducksoftware.protex.plugin.event.AnalysisListener;
 import com.blackducksoftware.protex.plugin.event.ProgressObserver;
 
 public class AnalyzeTask extends AbstractTask<Void> {
 
+    /**
+     * Creates the threads used to look up the project identifier while the source is being fingerprinted.
+     */
+    private static final DaemonThreadFactory LOOKUP_THREADS = new DaemonThreadFactory("protex-project-lookup-");
+
     private final String projectId;
 
-    private final File directory;
+    private final Callable<String> projectIdResolver;
+
+    private final SourceSelection selection;
 
     private final boolean force;
 
     private final Iterable<AnalysisListener> listeners;
 
+    private final FingerprintCache fingerprints;
+
     public AnalyzeTask(ProtexServerProxy proxy, String projectId, File directory, boolean force, Iterable<AnalysisListener> listeners) {
+        this(proxy, projectId, null, Collections.singleton(directory), Collections.<String> emptySet(), Collections.<String> emptySet(),
+                Collections.<String> emptySet(), force, listeners, null);
+    }
+
+    /**
+     * Creates an analysis task which resolves the project identifier while {@code bdstool} is being launched.
+     */
+    public AnalyzeTask(ProtexServerProxy proxy, Callable<String> projectId, File directory, boolean force, Iterable<AnalysisListener> listeners) {
+        this(proxy, null, projectId, Collections.singleton(directory), Collections.<String> emptySet(), Collections.<String> emptySet(),
+                Collections.<String> emptySet(), force, listeners, null);
+    }
+
+    /**
+     * Creates an analysis task which analyzes the files of several directories in a single {@code bdstool} invocation.
+     * The include and exclude patterns use "glob" syntax relative to each directory.
+     */
+    public AnalyzeTask(ProtexServerProxy proxy, Callable<String> projectId, Collection<File> directories, Collection<String> includes,
+            Collection<String> excludes, boolean force, Iterable<AnalysisListener> listeners) {
+        this(proxy, null, projectId, directories, includes, excludes, Collections.<String> emptySet(), force, listeners, null);
+    }
+
+    /**
+     * Creates an analysis task which is skipped if the source has not changed since the last successful analysis
+     * recorded in the supplied cache, unless it is forced.
+     */
+    public AnalyzeTask(ProtexServerProxy proxy, Callable<String> projectId, Collection<File> directories, Collection<String> includes,
+            Collection<String> excludes, boolean force, Iterable<AnalysisListener> listeners, FingerprintCache fingerprints) {
+        this(proxy, null, projectId, directories, includes, excludes, Collections.<String> emptySet(), force, listeners, fingerprints);
+    }
+
+    /**
+     * Creates an analysis task which also prunes files matching the supplied Protex ignore patterns locally, so
+     * {@code bdstool} never walks them.
+     */
+    public AnalyzeTask(ProtexServerProxy proxy, Callable<String> projectId, Collection<File> directories, Collection<String> includes,
+            Collection<String> excludes, Collection<String> ignorePatterns, boolean force, Iterable<AnalysisListener> listeners,
+            FingerprintCache fingerprints) {
+        this(proxy, null, projectId, directories, includes, excludes, ignorePatterns, force, listeners, fingerprints);
+    }
+
+    /**
+     * Creates an analysis task for an arbitrary selection of files.
+     */
+    AnalyzeTask(ProtexServerProxy proxy, Callable<String> projectId, SourceSelection selection, boolean force, Iterable<AnalysisListener> listeners,
+            FingerprintCache fingerprints) {
+        this(proxy, null, projectId, selection, force, listeners, fingerprints);
+    }
+
+    private AnalyzeTask(ProtexServerProxy proxy, String projectId, Callable<String> projectIdResolver, Collection<File> directories,
+            Collection<String> includes, Collection<String> excludes, Collection<String> ignorePatterns, boolean force,
+            Iterable<AnalysisListener> listeners, FingerprintCache fingerprints) {
+        this(proxy, projectId, projectIdResolver, new SourceSelection(directories, includes, excludes, ignorePatterns), force, listeners,
+                fingerprints);
+    }
+
+    private AnalyzeTask(ProtexServerProxy proxy, String projectId, Callable<String> projectIdResolver, SourceSelection selection, boolean force,
+            Iterable<AnalysisListener> listeners, FingerprintCache fingerprints) {
         super(proxy);
         this.projectId = projectId;
-        this.directory = directory;
+        this.projectIdResolver = projectIdResolver;
+        this.selection = selection;
         this.force = force;
         this.listeners = listeners;
+        this.fingerprints = fingerprints;
     }
 
     @Override
     protected Void execute() throws BuildToolIntegrationException {
-        BlackDuckCommand analyzeCommand = BlackDuckCommandBuilder.analyze()
-                .projectId(projectId)
-                .directory(directory)
-                .force(force)
-                .connectedTo(proxy().server())
-                .observingProgress(new ProgressObserver(listeners))
-                .build();
-        analyzeCommand.run();
+        ProjectIdResolver resolver = new ProjectIdResolver(projectId, projectIdResolver);
+
+        // Compare the source to the last successful analysis, measuring it at the same time
+        SourceFingerprint fingerprint = null;
+        ScanEstimator estimator = new ScanEstimator();
+        ScanEstimate estimate = null;
+        if (fingerprints != null) {
+            // The cache is keyed by project, unless the analysis is forced look it up while the source is walked
+            FutureTask<String> lookup = null;
+            if (!force) {
+                lookup = new FutureTask<String>(resolver);
+                LOOKUP_THREADS.newThread(lookup).start();
+            }
+            try {
+                fingerprint = SourceFingerprint.compute(selection, fingerprints.isHashingContents(), estimator);
+                estimate = estimator.estimate();
+            } catch (IOException e) {
+                // Just analyze, if there really is a problem staging will report it
+            }
+            String targetProjectId = lookup != null && fingerprint != null ? getQuietly(lookup) : null;
+            if (targetProjectId != null && fingerprints.isUnchanged(FingerprintCache.key(proxy().getServerUrl(), targetProjectId), selection,
+                    fingerprint)) {
+                notifySkipped(estimate);
+                return null;
+            }
+        }
+        if (estimate == null) {
+            try {
+                selection.walk(estimator);
+                estimate = estimator.estimate();
+            } catch (IOException e) {
+                // The estimate is optional, real problems are reported by staging or bdstool
+            }
+        }
+
+        // Multiple or pruned directories are presented to bdstool as a single staged directory
+        StagingView view;
+        try {
+            view = StagingView.create(selection);
+        } catch (IOException e) {
+            throw BuildToolIntegrationException.stagingFailed(selection.getDirectories().toString()).initCause(e);
+        }
+
+        try {
+            AnalyzeCommandBuilder builder = BlackDuckCommandBuilder.analyze();
+            if (resolver.resolved() != null) {
+                builder.projectId(resolver.resolved());
+            } else {
+                builder.projectId(resolver);
+            }
+
+            BlackDuckCommand analyzeCommand = builder
+                    .directory(view.getDirectory())
+                    .force(force)
+                    .estimate(estimate)
+                    .sources(selection.getDirectories())
+                    .connectedTo(proxy().server())
+                    .observingProgress(new ProgressObserver(listeners, estimate, view.getDirectory()))
+                    .build();
+            analyzeCommand.run();
+        } finally {
+            view.close();
+        }
+
+        // The project identifier was resolved by now, either up front or while the command was launched
+        String targetProjectId = resolver.resolved();
+        if (fingerprint != null && targetProjectId != null) {
+            fingerprints.record(FingerprintCache.key(proxy().getServerUrl(), targetProjectId), selection, fingerprint, targetProjectId);
+        }
         return null;
     }
 
+    /**
+     * Returns the looked up project identifier or {@code null} if it cannot be resolved; the command reports the
+     * failure.
+     */
+    private static String getQuietly(FutureTask<String> lookup) {
+        try {
+            return lookup.get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Notifies the listeners that the analysis was initiated and immediately succeeded without running.
+     */
+    private void notifySkipped(ScanEstimate estimate) {
+        Map<String, ?> initiatedStatus = estimate != null ? Collections.singletonMap(ScanEstimate.ESTIMATE, estimate)
+                : Collections.<String, Object> emptyMap();
+        Map<String, ?> status = Collections.singletonMap(FingerprintCache.SKIPPED, "unchanged");
+        Object analysis = new Object();
+        for (AnalysisListener listener : listeners) {
+            listener.analysisInitiated(new AnalysisEvent(analysis, initiatedStatus));
+        }
+        for (AnalysisListener listener : listeners) {
+            listener.analysisSucceeded(new AnalysisEvent(analysis, status));
+        }
+    }
+
+    /**
+     * Resolves the project identifier at most once, so it can be checked before the command is built without another
+     * round trip to the server.
+     */
+    private static final class ProjectIdResolver implements Callable<String> {
+        private final Callable<String> delegate;
+
+        private String projectId;
+
+        private ProjectIdResolver(String projectId, Callable<String> delegate) {
+            this.projectId = projectId;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized String call() throws Exception {
+            if (projectId == null && delegate != null) {
+                projectId = delegate.call();
+            }
+            return projectId;
+        }
+
+        /**
+         * Returns the project identifier if it is already known, otherwise {@code null}.
+         */
+        private synchronized String resolved() {
+            return projectId;
+        }
+    }
+
 }
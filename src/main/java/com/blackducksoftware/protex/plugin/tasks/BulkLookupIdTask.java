@@ -0,0 +1,114 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.blackducksoftware.protex.plugin.BuildToolIntegrationException;
+import com.blackducksoftware.protex.plugin.ProtexServerProxy;
+import com.blackducksoftware.sdk.protex.policy.externalid.ProtexObjectType;
+
+/**
+ * Looks up the Protex identifiers of several external identifiers at once. Lookups are issued concurrently (up to the
+ * parallelism limit) over the same SDK proxy; the result maps each external identifier, in iteration order, to its
+ * Protex identifier or {@code null} if there is no mapping.
+ *
+ * @author jgustie
+ */
+public class BulkLookupIdTask extends AbstractTask<Map<String, String>> {
+
+    private final String namespaceKey;
+
+    private final ProtexObjectType objectType;
+
+    private final Collection<String> externalIds;
+
+    private final int parallelism;
+
+    private final ExternalIdCache cache;
+
+    public BulkLookupIdTask(ProtexServerProxy proxy, String namespaceKey, ProtexObjectType objectType, Collection<String> externalIds,
+            int parallelism, ExternalIdCache cache) {
+        super(proxy);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.namespaceKey = namespaceKey;
+        this.objectType = objectType;
+        this.externalIds = externalIds;
+        this.parallelism = parallelism;
+        this.cache = cache;
+    }
+
+    @Override
+    protected Map<String, String> execute() throws BuildToolIntegrationException {
+        Set<String> uniqueIds = new LinkedHashSet<String>(externalIds);
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        if (uniqueIds.size() <= 1 || parallelism == 1) {
+            // Not worth the threads
+            for (String externalId : uniqueIds) {
+                result.put(externalId, new LookupIdTask(proxy(), namespaceKey, objectType, externalId, cache).call());
+            }
+            return result;
+        }
+
+        List<LookupIdTask> lookups = new ArrayList<LookupIdTask>(uniqueIds.size());
+        for (String externalId : uniqueIds) {
+            lookups.add(new LookupIdTask(proxy(), namespaceKey, objectType, externalId, cache));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, lookups.size()), new DaemonThreadFactory("protex-lookup-"));
+        try {
+            List<Future<String>> lookupResults = executor.invokeAll(lookups);
+            int index = 0;
+            for (String externalId : uniqueIds) {
+                try {
+                    result.put(externalId, lookupResults.get(index++).get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof BuildToolIntegrationException) {
+                        throw (BuildToolIntegrationException) e.getCause();
+                    } else {
+                        throw BuildToolIntegrationException.unknownException(e.getCause());
+                    }
+                }
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw BuildToolIntegrationException.unknownException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
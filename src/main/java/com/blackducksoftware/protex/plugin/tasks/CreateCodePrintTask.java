@@ -44,7 +44,11 @@ public class CreateCodePrintTask extends AbstractCreateTask<Void> {
     private final ProtexProject codePrint;
 
     public CreateCodePrintTask(ProtexServerProxy proxy, ProtexProject codePrint, ExternalNamespace namespace) {
-        super(proxy, codePrint, namespace);
+        this(proxy, codePrint, namespace, null);
+    }
+
+    public CreateCodePrintTask(ProtexServerProxy proxy, ProtexProject codePrint, ExternalNamespace namespace, ExternalIdCache cache) {
+        super(proxy, codePrint, namespace, cache);
         this.codePrint = codePrint;
     }
 
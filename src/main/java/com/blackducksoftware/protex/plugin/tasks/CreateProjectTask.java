@@ -42,7 +42,11 @@ public class CreateProjectTask extends AbstractCreateTask<Void> {
     private final ProtexProject project;
 
     public CreateProjectTask(ProtexServerProxy proxy, ProtexProject project, ExternalNamespace namespace) {
-        super(proxy, project, namespace);
+        this(proxy, project, namespace, null);
+    }
+
+    public CreateProjectTask(ProtexServerProxy proxy, ProtexProject project, ExternalNamespace namespace, ExternalIdCache cache) {
+        super(proxy, project, namespace, cache);
         this.project = project;
     }
 
@@ -0,0 +1,311 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EventListener;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import com.blackducksoftware.sdk.protex.policy.externalid.ProtexObjectType;
+
+/**
+ * A cache of the mappings from external identifiers to Protex identifiers. Mappings are kept in a bounded, least
+ * recently used, in-memory tier and optionally in an on-disk tier (one file per server and namespace) which survives
+ * between builds. Missing mappings are also cached, for a much shorter time, so repeated lookups of a project which
+ * has not been created yet do not each go to the server. Mappings created through the service replace any cached
+ * entry, mappings to projects the server no longer knows are evicted. Several builds may share the on-disk tier, each
+ * change is merged into the current contents of the file.
+ * <p>
+ * The build tool integration service always caches in memory; register an instance with the service to change the
+ * limits or to add the on-disk tier.
+ *
+ * @author jgustie
+ */
+public final class ExternalIdCache implements EventListener {
+
+    /**
+     * The result of a cache lookup, the object identifier is {@code null} if the mapping is known not to exist.
+     */
+    static final class Hit {
+        private final String objectId;
+
+        private Hit(String objectId) {
+            this.objectId = objectId;
+        }
+
+        String objectId() {
+            return objectId;
+        }
+    }
+
+    /**
+     * A cached mapping.
+     */
+    private static final class Entry {
+        private final String objectId;
+
+        private final long expires;
+
+        private Entry(String objectId, long expires) {
+            this.objectId = objectId;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Serializes changes to the on-disk tier within this JVM, file locks only exclude other processes.
+     */
+    private static final Object FILE_LOCK = new Object();
+
+    private final int maximumSize;
+
+    private final long ttlMillis;
+
+    private final long negativeTtlMillis;
+
+    /**
+     * The directory of the on-disk tier, {@code null} for memory only.
+     */
+    private final File directory;
+
+    /**
+     * The in-memory tier, in access order.
+     */
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * The loaded contents of the on-disk tier keyed by file.
+     */
+    private final Map<File, Properties> files = new HashMap<File, Properties>();
+
+    /**
+     * Creates a memory only cache holding up to 1,024 mappings for a day, missing mappings are cached for 30 seconds.
+     */
+    public ExternalIdCache() {
+        this(null);
+    }
+
+    /**
+     * Creates a cache with an on-disk tier in the supplied directory; if the directory is {@code null} the cache is
+     * memory only.
+     */
+    public ExternalIdCache(File directory) {
+        this(directory, 1024, 1L, TimeUnit.DAYS, 30L, TimeUnit.SECONDS);
+    }
+
+    public ExternalIdCache(File directory, int maximumSize, long ttl, TimeUnit ttlUnit, long negativeTtl, TimeUnit negativeTtlUnit) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximum size must be positive: " + maximumSize);
+        }
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+        this.ttlMillis = ttlUnit.toMillis(ttl);
+        this.negativeTtlMillis = negativeTtlUnit.toMillis(negativeTtl);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ExternalIdCache.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached mapping of an external identifier, {@code null} if it must be looked up.
+     */
+    synchronized Hit get(String serverUrl, String namespaceKey, ProtexObjectType objectType, String externalId) {
+        final long now = System.currentTimeMillis();
+        final String key = objectType + ":" + externalId;
+        final String memoryKey = serverUrl + "\n" + namespaceKey + "\n" + key;
+        Entry entry = entries.get(memoryKey);
+        if (entry != null) {
+            if (entry.expires > now) {
+                return new Hit(entry.objectId);
+            }
+            entries.remove(memoryKey);
+        }
+
+        // Only mappings which exist are kept on disk, promote them to memory with their original expiration
+        if (directory != null) {
+            String value = load(serverUrl, namespaceKey).getProperty(key);
+            int index = value != null ? value.indexOf('\t') : -1;
+            if (index > 0) {
+                try {
+                    long expires = Long.parseLong(value.substring(index + 1)) + ttlMillis;
+                    if (expires > now) {
+                        entries.put(memoryKey, new Entry(value.substring(0, index), expires));
+                        return new Hit(value.substring(0, index));
+                    }
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caches the result of a lookup or the creation of a mapping, the object identifier is {@code null} if the
+     * mapping does not exist.
+     */
+    synchronized void put(String serverUrl, String namespaceKey, ProtexObjectType objectType, String externalId, String objectId) {
+        final long now = System.currentTimeMillis();
+        final String key = objectType + ":" + externalId;
+        entries.put(serverUrl + "\n" + namespaceKey + "\n" + key, new Entry(objectId, now + (objectId != null ? ttlMillis : negativeTtlMillis)));
+        if (directory != null && (objectId != null || load(serverUrl, namespaceKey).containsKey(key))) {
+            store(serverUrl, namespaceKey, key, objectId != null ? objectId + "\t" + now : null);
+        }
+    }
+
+    /**
+     * Discards the cached mapping of an external identifier, e.g. because the object it maps to no longer exists.
+     */
+    public synchronized void evict(String serverUrl, String namespaceKey, ProtexObjectType objectType, String externalId) {
+        final String key = objectType + ":" + externalId;
+        entries.remove(serverUrl + "\n" + namespaceKey + "\n" + key);
+        if (directory != null) {
+            // Another build may have written the mapping since this cache read the file
+            store(serverUrl, namespaceKey, key, null);
+        }
+    }
+
+    /**
+     * Checks if an external namespace is known to exist.
+     */
+    synchronized boolean hasNamespace(String serverUrl, String namespaceKey) {
+        Entry entry = entries.get(serverUrl + "\n" + namespaceKey);
+        return entry != null && entry.expires > System.currentTimeMillis();
+    }
+
+    /**
+     * Records that an external namespace exists.
+     */
+    synchronized void putNamespace(String serverUrl, String namespaceKey) {
+        entries.put(serverUrl + "\n" + namespaceKey, new Entry(namespaceKey, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Discards every cached mapping, including the on-disk tier.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        for (File file : files.keySet()) {
+            file.delete();
+        }
+        files.clear();
+    }
+
+    /**
+     * Returns the on-disk mappings of a server and namespace, failures to read the file are treated as empty.
+     */
+    private Properties load(String serverUrl, String namespaceKey) {
+        File file = file(serverUrl, namespaceKey);
+        Properties properties = files.get(file);
+        if (properties == null) {
+            properties = new Properties();
+            try {
+                InputStream in = Files.newInputStream(file.toPath());
+                try {
+                    properties.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException ignored) {
+            }
+            files.put(file, properties);
+        }
+        return properties;
+    }
+
+    /**
+     * Changes a single on-disk mapping of a server and namespace, removing it if the value is {@code null}. Other builds
+     * may share the directory, so the file is re-read under a lock and only this mapping is changed before the result
+     * is moved into place. This is a best effort, failures are ignored.
+     */
+    private void store(String serverUrl, String namespaceKey, String key, String value) {
+        File file = file(serverUrl, namespaceKey);
+        synchronized (FILE_LOCK) {
+            try {
+                directory.mkdirs();
+                FileChannel lock = FileChannel.open(new File(directory, file.getName() + ".lock").toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE);
+                try {
+                    lock.lock();
+                    files.remove(file);
+                    Properties properties = load(serverUrl, namespaceKey);
+                    if (value != null) {
+                        properties.setProperty(key, value);
+                    } else {
+                        properties.remove(key);
+                    }
+
+                    Path temp = Files.createTempFile(directory.toPath(), file.getName(), ".tmp");
+                    try {
+                        OutputStream out = Files.newOutputStream(temp);
+                        try {
+                            properties.store(out, serverUrl + " " + namespaceKey);
+                        } finally {
+                            out.close();
+                        }
+                        Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } finally {
+                        Files.deleteIfExists(temp);
+                    }
+                } finally {
+                    // Closing the channel releases the lock
+                    lock.close();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private File file(String serverUrl, String namespaceKey) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update((serverUrl + "\n" + namespaceKey).getBytes(UTF_8));
+            return new File(directory, String.format("%040x.properties", new BigInteger(1, digest.digest())));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required", e);
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EventListener;
+import java.util.Properties;
+
+/**
+ * A cache of the source fingerprints of successful analyses. When registered with the build tool integration service,
+ * an analysis of a tree whose files have not changed since the last successful analysis of the same project is
+ * skipped (unless it is forced). Listeners see an initiated and succeeded event, the status of the success event
+ * contains {@value #SKIPPED} mapped to "unchanged".
+ * <p>
+ * By default only the size and modification time of each file is compared; content hashing catches changes that
+ * preserve both (at the cost of reading every file) and must be used if the tree is re-created by each build, e.g. by
+ * a fresh checkout. When hashing, modification times are ignored so the same tree checked out on different build
+ * agents has the same fingerprint; with a shared {@linkplain FingerprintStore store} an analysis on any agent allows
+ * the others to skip it.
+ *
+ * @author jgustie
+ */
+public final class FingerprintCache implements EventListener {
+
+    /**
+     * The status key present on the success event of a skipped analysis.
+     */
+    public static final String SKIPPED = "skipped";
+
+    /**
+     * The store containing the manifests and records.
+     */
+    private final FingerprintStore store;
+
+    /**
+     * Flag indicating the contents of each file should be hashed.
+     */
+    private final boolean hashContents;
+
+    /**
+     * Creates a new fingerprint cache using a directory in the temporary directory.
+     */
+    public FingerprintCache(boolean hashContents) {
+        this(new File(new File(System.getProperty("java.io.tmpdir"), "bdstool"), "fingerprints"), hashContents);
+    }
+
+    public FingerprintCache(File directory, boolean hashContents) {
+        this(FingerprintStores.directory(directory), hashContents);
+    }
+
+    public FingerprintCache(FingerprintStore store, boolean hashContents) {
+        this.store = store;
+        this.hashContents = hashContents;
+    }
+
+    public FingerprintStore getStore() {
+        return store;
+    }
+
+    public boolean isHashingContents() {
+        return hashContents;
+    }
+
+    /**
+     * Returns the key identifying the analyses of a project on a server. Several trees may be analyzed into the same
+     * project, so the names of the directories and the patterns are part of the compared digest rather than the key:
+     * analyzing a different tree into the project replaces the record instead of sitting beside it.
+     */
+    static String key(String serverUrl, String projectId) {
+        return sha1(serverUrl + "\n" + projectId);
+    }
+
+    /**
+     * Checks to see if the last successful analysis with the supplied key was of the same selection with the same
+     * source fingerprint. Failures to read the store are treated as a miss.
+     */
+    boolean isUnchanged(String key, SourceSelection selection, SourceFingerprint fingerprint) {
+        Properties record = new Properties();
+        try {
+            byte[] content = store.get(key + ".properties");
+            if (content == null) {
+                return false;
+            }
+            record.load(new ByteArrayInputStream(content));
+        } catch (IOException e) {
+            return false;
+        }
+        return digest(selection, fingerprint).equals(record.getProperty("digest"));
+    }
+
+    /**
+     * Records a successful analysis. This is a best effort, failures are ignored.
+     */
+    void record(String key, SourceSelection selection, SourceFingerprint fingerprint, String projectId) {
+        Properties record = new Properties();
+        record.setProperty("digest", digest(selection, fingerprint));
+        record.setProperty("projectId", projectId);
+        record.setProperty("files", Integer.toString(fingerprint.size()));
+        record.setProperty("analyzed", Long.toString(System.currentTimeMillis()));
+        try {
+            // The manifest is only kept to diagnose unexpected analyses, the record is written last
+            ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+            Writer out = new OutputStreamWriter(manifest, UTF_8);
+            fingerprint.write(out);
+            out.close();
+            store.put(key + ".manifest", manifest.toByteArray());
+
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            record.store(content, null);
+            store.put(key + ".properties", content.toByteArray());
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Returns the digest compared between analyses: the names of the directories, the patterns and the fingerprint of
+     * the selected files. Only the names of the directories are used so the digest is the same regardless of where the
+     * tree is checked out.
+     */
+    private static String digest(SourceSelection selection, SourceFingerprint fingerprint) {
+        return sha1(selection.getNames() + "\n" + selection.describePatterns() + "\n" + fingerprint.digest());
+    }
+
+    private static String sha1(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(value.getBytes(UTF_8));
+            return String.format("%040x", new BigInteger(1, digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required", e);
+        }
+    }
+
+}
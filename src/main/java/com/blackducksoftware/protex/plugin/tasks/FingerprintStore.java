@@ -0,0 +1,49 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import java.io.IOException;
+
+/**
+ * The storage behind a {@link FingerprintCache}. A store which is shared by several machines (e.g. a network file system
+ * or an HTTP endpoint) allows an analysis performed on one build agent to be skipped on all of the others; see
+ * {@link FingerprintStores} for the available implementations.
+ * <p>
+ * Stores must be thread-safe. Entry names are short, file system and URL safe strings.
+ *
+ * @author jgustie
+ */
+public interface FingerprintStore {
+
+    /**
+     * Returns the contents of the named entry, {@code null} if it does not exist.
+     */
+    byte[] get(String name) throws IOException;
+
+    /**
+     * Replaces the contents of the named entry. Readers must either see the previous contents or the new contents.
+     */
+    void put(String name, byte[] content) throws IOException;
+
+}
@@ -0,0 +1,224 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The built-in {@linkplain FingerprintStore fingerprint stores}.
+ *
+ * @author jgustie
+ */
+public final class FingerprintStores {
+
+    /**
+     * The connect and read timeout used for HTTP stores, a slow store should never cost more than the analysis.
+     */
+    private static final int HTTP_TIMEOUT_MILLIS = 10000;
+
+    private FingerprintStores() {
+    }
+
+    /**
+     * Returns a store which keeps each entry in a file of the supplied directory. The directory may be on a shared file
+     * system, entries are replaced atomically.
+     */
+    public static FingerprintStore directory(File directory) {
+        return new DirectoryStore(directory);
+    }
+
+    /**
+     * Returns a store which keeps each entry as a resource relative to the supplied base URL (which should end with a
+     * slash). Entries are read using {@code GET} and written using {@code PUT}; a 404 response indicates a missing
+     * entry. The optional authorization is sent as the {@code Authorization} header and the optional proxy is used to
+     * connect.
+     */
+    public static FingerprintStore http(URL base, String authorization, Proxy proxy) {
+        return new HttpStore(base, authorization, proxy);
+    }
+
+    /**
+     * Returns a store which only keeps entries in memory, for example to stand in for a shared store in tests.
+     */
+    public static FingerprintStore inMemory() {
+        return new InMemoryStore();
+    }
+
+    private static final class DirectoryStore implements FingerprintStore {
+        private final File directory;
+
+        private DirectoryStore(File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public byte[] get(String name) throws IOException {
+            try {
+                return Files.readAllBytes(new File(directory, name).toPath());
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void put(String name, byte[] content) throws IOException {
+            // Write to a temporary file and move it into place so other processes never see a partial file
+            directory.mkdirs();
+            File tempFile = File.createTempFile(name, ".tmp", directory);
+            try {
+                OutputStream out = new FileOutputStream(tempFile);
+                try {
+                    out.write(content);
+                } finally {
+                    out.close();
+                }
+                Files.move(tempFile.toPath(), new File(directory, name).toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+            } finally {
+                tempFile.delete();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return directory.toString();
+        }
+    }
+
+    private static final class HttpStore implements FingerprintStore {
+        private final URL base;
+
+        private final String authorization;
+
+        private final Proxy proxy;
+
+        private HttpStore(URL base, String authorization, Proxy proxy) {
+            this.base = base;
+            this.authorization = authorization;
+            this.proxy = proxy;
+        }
+
+        @Override
+        public byte[] get(String name) throws IOException {
+            HttpURLConnection connection = open(name);
+            try {
+                if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                    return null;
+                }
+                InputStream in = connection.getInputStream();
+                try {
+                    ByteArrayOutputStream content = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[8192];
+                    int count;
+                    while ((count = in.read(buffer)) >= 0) {
+                        content.write(buffer, 0, count);
+                    }
+                    return content.toByteArray();
+                } finally {
+                    in.close();
+                }
+            } catch (FileNotFoundException e) {
+                return null;
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        @Override
+        public void put(String name, byte[] content) throws IOException {
+            HttpURLConnection connection = open(name);
+            try {
+                connection.setRequestMethod("PUT");
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(content.length);
+                connection.setRequestProperty("Content-Type", "application/octet-stream");
+                OutputStream out = connection.getOutputStream();
+                try {
+                    out.write(content);
+                } finally {
+                    out.close();
+                }
+                int responseCode = connection.getResponseCode();
+                if (responseCode / 100 != 2) {
+                    throw new IOException("Unable to store " + name + ": " + responseCode + " " + connection.getResponseMessage());
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        private HttpURLConnection open(String name) throws IOException {
+            URL url = new URL(base, name);
+            HttpURLConnection connection = (HttpURLConnection) (proxy != null ? url.openConnection(proxy) : url.openConnection());
+            connection.setConnectTimeout(HTTP_TIMEOUT_MILLIS);
+            connection.setReadTimeout(HTTP_TIMEOUT_MILLIS);
+            connection.setUseCaches(false);
+            if (authorization != null) {
+                connection.setRequestProperty("Authorization", authorization);
+            }
+            return connection;
+        }
+
+        @Override
+        public String toString() {
+            return base.toString();
+        }
+    }
+
+    private static final class InMemoryStore implements FingerprintStore {
+        private final ConcurrentMap<String, byte[]> entries = new ConcurrentHashMap<String, byte[]>();
+
+        @Override
+        public byte[] get(String name) {
+            byte[] content = entries.get(name);
+            return content != null ? content.clone() : null;
+        }
+
+        @Override
+        public void put(String name, byte[] content) {
+            entries.put(name, content.clone());
+        }
+
+        @Override
+        public String toString() {
+            return "memory";
+        }
+    }
+
+}
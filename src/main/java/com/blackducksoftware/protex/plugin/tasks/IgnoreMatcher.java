@@ -0,0 +1,412 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Protex ignore patterns compiled into a single automaton over path segments, used to prune files locally before
+ * {@code bdstool} sees them. All of the patterns share one trie so the cost of matching a name does not grow with the
+ * number of patterns: literal names and "*.ext" style suffixes are hash lookups, only irregular wildcards are tested
+ * one by one.
+ * <p>
+ * Patterns are interpreted as follows: a pattern without a slash (e.g. {@code node_modules} or {@code *.class})
+ * matches a file or directory with that name anywhere in the tree; a pattern containing a slash (e.g.
+ * {@code /docs/generated}) is relative to the root of each source directory; a trailing slash (e.g. {@code target/})
+ * restricts the pattern to directories. Within a segment {@code *} matches any number of characters and {@code ?}
+ * matches a single character, a segment of {@code **} matches any number of segments. Everything below a matching
+ * directory is ignored.
+ * <p>
+ * Matching is incremental: a {@link State} represents a directory and is {@linkplain State#step(String) stepped} once
+ * per child, so a walk never re-matches the ancestors of a path.
+ *
+ * @author jgustie
+ */
+public final class IgnoreMatcher {
+
+    /**
+     * A node in the trie of pattern segments.
+     */
+    private static final class Node {
+        /**
+         * Children reached by an exact segment name.
+         */
+        private final Map<String, Node> literals = new HashMap<String, Node>();
+
+        /**
+         * Children reached by segments of the form "*suffix", keyed by suffix.
+         */
+        private final Map<String, Node> suffixes = new HashMap<String, Node>();
+
+        /**
+         * Children reached by any other wildcard segment, keyed by segment.
+         */
+        private final Map<String, Node> wildcards = new HashMap<String, Node>();
+
+        /**
+         * The other wildcard segments indexed by the longer of their literal prefix or literal suffix, so only the few
+         * which could possibly match a name need to be tested.
+         */
+        private final Map<String, List<Wildcard>> wildcardsByPrefix = new HashMap<String, List<Wildcard>>();
+
+        private final Map<String, List<Wildcard>> wildcardsBySuffix = new HashMap<String, List<Wildcard>>();
+
+        /**
+         * The other wildcard segments which start and end with a wildcard and are always tested.
+         */
+        private final List<Wildcard> unindexedWildcards = new ArrayList<Wildcard>();
+
+        private int maxWildcardPrefixLength;
+
+        private int maxWildcardSuffixLength;
+
+        /**
+         * The child reached by a "**" segment, which matches zero or more segments.
+         */
+        private Node globstar;
+
+        /**
+         * Flag indicating this node was reached by "**" and consumes any number of segments.
+         */
+        private boolean repeating;
+
+        /**
+         * The longest suffix key, limits the number of suffix lookups per name.
+         */
+        private int maxSuffixLength;
+
+        private boolean matchesAny;
+
+        private boolean matchesDirectory;
+
+        private Node child(String segment) {
+            if (segment.equals("**")) {
+                if (globstar == null) {
+                    globstar = new Node();
+                    globstar.repeating = true;
+                }
+                return globstar;
+            } else if (segment.indexOf('*') < 0 && segment.indexOf('?') < 0) {
+                return child(literals, segment);
+            } else if (segment.startsWith("*") && segment.indexOf('*', 1) < 0 && segment.indexOf('?') < 0) {
+                maxSuffixLength = Math.max(maxSuffixLength, segment.length() - 1);
+                return child(suffixes, segment.substring(1));
+            } else {
+                Node child = wildcards.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    wildcards.put(segment, child);
+                    index(new Wildcard(segment, child));
+                }
+                return child;
+            }
+        }
+
+        private void index(Wildcard wildcard) {
+            String segment = wildcard.segment;
+            int first = firstWildcard(segment);
+            int last = lastWildcard(segment);
+            String prefix = segment.substring(0, first);
+            String suffix = segment.substring(last + 1);
+            if (prefix.isEmpty() && suffix.isEmpty()) {
+                unindexedWildcards.add(wildcard);
+            } else if (prefix.length() >= suffix.length()) {
+                maxWildcardPrefixLength = Math.max(maxWildcardPrefixLength, prefix.length());
+                wildcards(wildcardsByPrefix, prefix).add(wildcard);
+            } else {
+                maxWildcardSuffixLength = Math.max(maxWildcardSuffixLength, suffix.length());
+                wildcards(wildcardsBySuffix, suffix).add(wildcard);
+            }
+        }
+
+        /**
+         * Adds the children whose wildcard segment matches the supplied name.
+         */
+        private void addWildcardMatches(Map<Node, Boolean> next, String name) {
+            if (!wildcardsByPrefix.isEmpty()) {
+                for (int i = Math.min(name.length(), maxWildcardPrefixLength); i > 0; --i) {
+                    addMatches(next, wildcardsByPrefix.get(name.substring(0, i)), name);
+                }
+            }
+            if (!wildcardsBySuffix.isEmpty()) {
+                for (int i = Math.max(0, name.length() - maxWildcardSuffixLength); i < name.length(); ++i) {
+                    addMatches(next, wildcardsBySuffix.get(name.substring(i)), name);
+                }
+            }
+            addMatches(next, unindexedWildcards, name);
+        }
+
+        private static void addMatches(Map<Node, Boolean> next, List<Wildcard> wildcards, String name) {
+            if (wildcards != null) {
+                for (Wildcard wildcard : wildcards) {
+                    if (wildcard.pattern.matcher(name).matches()) {
+                        add(next, wildcard.node);
+                    }
+                }
+            }
+        }
+
+        private static List<Wildcard> wildcards(Map<String, List<Wildcard>> index, String key) {
+            List<Wildcard> wildcards = index.get(key);
+            if (wildcards == null) {
+                wildcards = new ArrayList<Wildcard>(1);
+                index.put(key, wildcards);
+            }
+            return wildcards;
+        }
+
+        private static Node child(Map<String, Node> children, String key) {
+            Node child = children.get(key);
+            if (child == null) {
+                child = new Node();
+                children.put(key, child);
+            }
+            return child;
+        }
+    }
+
+    /**
+     * A segment containing wildcards other than a simple "*suffix".
+     */
+    private static final class Wildcard {
+        private final String segment;
+
+        private final Pattern pattern;
+
+        private final Node node;
+
+        private Wildcard(String segment, Node node) {
+            this.segment = segment;
+            this.pattern = Pattern.compile(toRegex(segment));
+            this.node = node;
+        }
+    }
+
+    /**
+     * The set of trie positions after matching the segments of a directory.
+     */
+    static final class State {
+        private final Node[] nodes;
+
+        private final boolean ignored;
+
+        private State(Node[] nodes, boolean ignored) {
+            this.nodes = nodes;
+            this.ignored = ignored;
+        }
+
+        /**
+         * Returns the state of a child with the supplied name.
+         */
+        State step(String name) {
+            if (ignored) {
+                return this;
+            }
+            Map<Node, Boolean> next = new IdentityHashMap<Node, Boolean>();
+            for (Node node : nodes) {
+                if (node.repeating) {
+                    next.put(node, Boolean.TRUE);
+                }
+                add(next, node.literals.get(name));
+                for (int i = Math.max(0, name.length() - node.maxSuffixLength); i <= name.length() && !node.suffixes.isEmpty(); ++i) {
+                    add(next, node.suffixes.get(name.substring(i)));
+                }
+                node.addWildcardMatches(next, name);
+            }
+            return next.isEmpty() ? EMPTY : new State(next.keySet().toArray(new Node[next.size()]), false);
+        }
+
+        /**
+         * Checks to see if the child this state represents is ignored, this is always {@code true} for anything below
+         * an ignored directory.
+         */
+        boolean isIgnored(boolean directory) {
+            if (ignored) {
+                return true;
+            }
+            for (Node node : nodes) {
+                if (node.matchesAny || (directory && node.matchesDirectory)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the state to use for the children of this directory.
+         */
+        State enter() {
+            return isIgnored(true) ? IGNORED : this;
+        }
+
+        /**
+         * Checks to see if nothing below this state can be ignored.
+         */
+        boolean isEmpty() {
+            return nodes.length == 0 && !ignored;
+        }
+    }
+
+    private static final State EMPTY = new State(new Node[0], false);
+
+    private static final State IGNORED = new State(new Node[0], true);
+
+    /**
+     * A matcher which does not ignore anything, declared after the states it uses.
+     */
+    static final IgnoreMatcher NONE = compile(Arrays.<String> asList());
+
+    private final State root;
+
+    private IgnoreMatcher(State root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles a collection of ignore patterns, blank patterns are ignored.
+     */
+    public static IgnoreMatcher compile(Collection<String> patterns) {
+        Node root = new Node();
+        boolean empty = true;
+        for (String pattern : patterns) {
+            String p = pattern.trim().replace('\\', '/');
+            boolean directoryOnly = p.endsWith("/");
+            while (p.endsWith("/")) {
+                p = p.substring(0, p.length() - 1);
+            }
+            boolean anchored = p.indexOf('/') >= 0;
+            while (p.startsWith("/")) {
+                p = p.substring(1);
+            }
+            if (p.isEmpty()) {
+                continue;
+            }
+
+            Node node = anchored ? root : root.child("**");
+            for (String segment : p.split("/+")) {
+                node = node.child(segment);
+            }
+            if (directoryOnly) {
+                node.matchesDirectory = true;
+            } else {
+                node.matchesAny = true;
+            }
+            empty = false;
+        }
+        return new IgnoreMatcher(empty ? EMPTY : closure(root));
+    }
+
+    /**
+     * Returns the state of the root of a source directory.
+     */
+    State root() {
+        return root;
+    }
+
+    /**
+     * Checks to see if nothing is ignored.
+     */
+    boolean isEmpty() {
+        return root.isEmpty();
+    }
+
+    /**
+     * Checks to see if a relative path (using forward slashes) is ignored, either directly or because one of its parent
+     * directories is ignored.
+     */
+    public boolean isIgnored(String path, boolean directory) {
+        State state = root;
+        String[] segments = path.split("/+");
+        for (int i = 0; i < segments.length; ++i) {
+            if (segments[i].isEmpty()) {
+                continue;
+            }
+            state = state.step(segments[i]);
+            if (i < segments.length - 1) {
+                state = state.enter();
+            }
+        }
+        return state.isIgnored(directory);
+    }
+
+    private static State closure(Node node) {
+        Map<Node, Boolean> nodes = new IdentityHashMap<Node, Boolean>();
+        add(nodes, node);
+        return new State(nodes.keySet().toArray(new Node[nodes.size()]), false);
+    }
+
+    /**
+     * Adds a node and the nodes reachable from it without consuming a segment.
+     */
+    private static void add(Map<Node, Boolean> nodes, Node node) {
+        while (node != null && nodes.put(node, Boolean.TRUE) == null) {
+            node = node.globstar;
+        }
+    }
+
+    private static int firstWildcard(String segment) {
+        for (int i = 0; i < segment.length(); ++i) {
+            if (segment.charAt(i) == '*' || segment.charAt(i) == '?') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastWildcard(String segment) {
+        for (int i = segment.length() - 1; i >= 0; --i) {
+            if (segment.charAt(i) == '*' || segment.charAt(i) == '?') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String toRegex(String segment) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < segment.length(); ++i) {
+            char c = segment.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start) {
+                    regex.append(Pattern.quote(segment.substring(start, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (start < segment.length()) {
+            regex.append(Pattern.quote(segment.substring(start)));
+        }
+        return regex.toString();
+    }
+
+}
@@ -25,6 +25,7 @@ package com.blackducksoftware.protex.plugin.tasks;
 
 import com.blackducksoftware.protex.plugin.BuildToolIntegrationException;
 import com.blackducksoftware.protex.plugin.ProtexServerProxy;
+import com.blackducksoftware.sdk.fault.ErrorCode;
 import com.blackducksoftware.sdk.fault.SdkFault;
 import com.blackducksoftware.sdk.protex.policy.externalid.ProtexObjectType;
 
@@ -36,26 +37,82 @@ public class LookupIdTask extends AbstractTask<String> {
 
     private final String externalId;
 
+    private final ExternalIdCache cache;
+
+    private final boolean verifyCached;
+
     public LookupIdTask(ProtexServerProxy proxy, String namespaceKey, ProtexObjectType objectType, String externalId) {
+        this(proxy, namespaceKey, objectType, externalId, null);
+    }
+
+    /**
+     * Creates a lookup which consults (and populates) the supplied cache, which may be {@code null}.
+     */
+    public LookupIdTask(ProtexServerProxy proxy, String namespaceKey, ProtexObjectType objectType, String externalId, ExternalIdCache cache) {
+        this(proxy, namespaceKey, objectType, externalId, cache, false);
+    }
+
+    /**
+     * Creates a lookup which optionally confirms a cached project identifier still refers to a project before it is
+     * returned (e.g. before analyzing it); if the project is gone the mapping is evicted and looked up again.
+     */
+    public LookupIdTask(ProtexServerProxy proxy, String namespaceKey, ProtexObjectType objectType, String externalId, ExternalIdCache cache,
+            boolean verifyCached) {
         super(proxy);
         this.namespaceKey = namespaceKey;
         this.objectType = objectType;
         this.externalId = externalId;
+        this.cache = cache;
+        this.verifyCached = verifyCached;
     }
 
     @Override
     protected String execute() throws BuildToolIntegrationException {
+        if (cache != null) {
+            ExternalIdCache.Hit hit = cache.get(proxy().getServerUrl(), namespaceKey, objectType, externalId);
+            if (hit != null && (!verifyCached || hit.objectId() == null || exists(hit.objectId()))) {
+                return hit.objectId();
+            }
+        }
+
+        String objectId;
         try {
-            return proxy().getExternalIdApi().getObjectIdByExternalId(namespaceKey, externalId, objectType).getObjectId();
+            objectId = proxy().getExternalIdApi().getObjectIdByExternalId(namespaceKey, externalId, objectType).getObjectId();
         } catch (SdkFault fault) {
             switch (fault.getFaultInfo().getErrorCode()) {
             case EXTERNAL_NAMESPACE_NOT_FOUND:
             case EXTERNAL_ID_MAPPING_NOT_FOUND:
-                return null;
+                objectId = null;
+                break;
             default:
                 throw handleSdkFault(fault);
             }
         }
+
+        if (cache != null) {
+            cache.put(proxy().getServerUrl(), namespaceKey, objectType, externalId, objectId);
+        }
+        return objectId;
+    }
+
+    /**
+     * Checks to see if a cached object identifier still refers to an object on the server, evicting the mapping if it
+     * does not. Only projects can be checked, other objects are assumed to exist.
+     */
+    private boolean exists(String objectId) throws BuildToolIntegrationException {
+        if (objectType != ProtexObjectType.PROJECT) {
+            return true;
+        }
+        try {
+            proxy().getProjectApi().getProjectById(objectId);
+            return true;
+        } catch (SdkFault fault) {
+            if (fault.getFaultInfo().getErrorCode() != ErrorCode.PROJECT_NOT_FOUND) {
+                throw handleSdkFault(fault);
+            }
+        }
+        cache.evict(proxy().getServerUrl(), namespaceKey, objectType, externalId);
+        return false;
     }
 
 }
@@ -0,0 +1,77 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.blackducksoftware.protex.plugin.ScanEstimate;
+
+/**
+ * Accumulates a {@link ScanEstimate} while the selected files are walked.
+ *
+ * @author jgustie
+ */
+final class ScanEstimator implements SourceSelection.Visitor {
+
+    private final AtomicLong fileCount = new AtomicLong();
+
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    private final ConcurrentMap<String, AtomicLong> extensions = new ConcurrentHashMap<String, AtomicLong>();
+
+    @Override
+    public void visitFile(Path file, String path, BasicFileAttributes attrs) {
+        fileCount.incrementAndGet();
+        totalBytes.addAndGet(attrs.size());
+
+        String name = file.getFileName().toString();
+        int index = name.lastIndexOf('.');
+        String extension = index > 0 ? name.substring(index + 1).toLowerCase(Locale.ENGLISH) : "";
+        AtomicLong count = extensions.get(extension);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = extensions.putIfAbsent(extension, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    ScanEstimate estimate() {
+        Map<String, Long> histogram = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : extensions.entrySet()) {
+            histogram.put(entry.getKey(), entry.getValue().get());
+        }
+        return new ScanEstimate(fileCount.get(), totalBytes.get(), histogram);
+    }
+
+}
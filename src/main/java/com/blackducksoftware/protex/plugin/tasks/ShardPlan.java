@@ -0,0 +1,213 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.blackducksoftware.protex.plugin.ShardBalance;
+
+/**
+ * The division of a source directory into shards which are analyzed independently. The tree is broken into units
+ * (whole sub-trees, or just the files directly inside a directory when the sub-tree is too large) which are sorted by
+ * path and split into contiguous ranges of roughly equal weight. Since units are ordered by path, a change in the
+ * size of one part of the tree only moves the units near the shard boundaries; most files stay in the same shard from
+ * run to run so incremental analysis on the server still applies.
+ * <p>
+ * Each shard is a list of {@linkplain SourceSelection.Slice slices} so analyzing a shard only walks its own part of the
+ * tree.
+ *
+ * @author jgustie
+ */
+final class ShardPlan {
+
+    /**
+     * The number of units per shard we aim for, more units give better balance but more slices per shard.
+     */
+    private static final int UNITS_PER_SHARD = 8;
+
+    /**
+     * A directory and the weight of the files below it.
+     */
+    private static final class Directory {
+        private final String path;
+
+        private final Map<String, Directory> children = new TreeMap<String, Directory>();
+
+        private long ownWeight;
+
+        private long totalWeight;
+
+        private Directory(String path) {
+            this.path = path;
+        }
+
+        private Directory child(String name) {
+            Directory child = children.get(name);
+            if (child == null) {
+                child = new Directory(path.isEmpty() ? name : path + "/" + name);
+                children.put(name, child);
+            }
+            return child;
+        }
+
+        private long computeTotalWeight() {
+            totalWeight = ownWeight;
+            for (Directory child : children.values()) {
+                totalWeight += child.computeTotalWeight();
+            }
+            return totalWeight;
+        }
+    }
+
+    /**
+     * A range of the tree assigned to a single shard.
+     */
+    private static final class Unit {
+        private final SourceSelection.Slice slice;
+
+        private final long weight;
+
+        private Unit(SourceSelection.Slice slice, long weight) {
+            this.slice = slice;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * The slices of each shard, some shards may be empty.
+     */
+    private final List<List<SourceSelection.Slice>> shards;
+
+    private ShardPlan(List<List<SourceSelection.Slice>> shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Plans the shards of a directory, files matching the ignore patterns are not considered.
+     */
+    static ShardPlan plan(File directory, Collection<String> ignorePatterns, int shardCount, final ShardBalance balance) throws IOException {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shard count must be positive: " + shardCount);
+        }
+
+        // Aggregate the weight of the files directly inside each directory
+        SourceSelection selection = new SourceSelection(Collections.singleton(directory), Collections.<String> emptySet(),
+                Collections.<String> emptySet(), ignorePatterns);
+        final int prefixLength = selection.prefix(0).length();
+        final ConcurrentMap<String, AtomicLong> weights = new ConcurrentHashMap<String, AtomicLong>();
+        selection.walk(new SourceSelection.Visitor() {
+            @Override
+            public void visitFile(Path file, String path, BasicFileAttributes attrs) {
+                int index = path.lastIndexOf('/');
+                String parent = index >= prefixLength ? path.substring(prefixLength, index) : "";
+                AtomicLong weight = weights.get(parent);
+                if (weight == null) {
+                    AtomicLong newWeight = new AtomicLong();
+                    weight = weights.putIfAbsent(parent, newWeight);
+                    if (weight == null) {
+                        weight = newWeight;
+                    }
+                }
+                weight.addAndGet(balance == ShardBalance.TOTAL_BYTES ? Math.max(attrs.size(), 1L) : 1L);
+            }
+        });
+
+        // Build the directory tree
+        Directory root = new Directory("");
+        for (Map.Entry<String, AtomicLong> entry : weights.entrySet()) {
+            Directory node = root;
+            if (!entry.getKey().isEmpty()) {
+                for (String name : entry.getKey().split("/")) {
+                    node = node.child(name);
+                }
+            }
+            node.ownWeight += entry.getValue().get();
+        }
+        long total = root.computeTotalWeight();
+
+        // Break the tree into units and split the ordered units into contiguous ranges
+        List<Unit> units = new ArrayList<Unit>();
+        split(root, Math.max(total / ((long) shardCount * UNITS_PER_SHARD), 1L), units);
+        List<List<SourceSelection.Slice>> shards = new ArrayList<List<SourceSelection.Slice>>(shardCount);
+        for (int i = 0; i < shardCount; ++i) {
+            shards.add(new ArrayList<SourceSelection.Slice>());
+        }
+        long cumulative = 0L;
+        for (Unit unit : units) {
+            // Assign by the midpoint of the unit so large units land in the shard they mostly overlap
+            long midpoint = cumulative + unit.weight / 2L;
+            int shard = (int) Math.min(midpoint * shardCount / Math.max(total, 1L), shardCount - 1);
+            shards.get(shard).add(unit.slice);
+            cumulative += unit.weight;
+        }
+        return new ShardPlan(shards);
+    }
+
+    /**
+     * Returns the number of shards.
+     */
+    int size() {
+        return shards.size();
+    }
+
+    /**
+     * Returns the slices of the source directory assigned to a shard. An empty list indicates the shard has nothing to
+     * analyze.
+     */
+    List<SourceSelection.Slice> slices(int shard) {
+        return Collections.unmodifiableList(shards.get(shard));
+    }
+
+    /**
+     * Adds the units of a directory in path order: whole sub-trees when they are light enough, otherwise the files
+     * directly inside the directory followed by the units of each child.
+     */
+    private static void split(Directory directory, long maxUnitWeight, List<Unit> units) {
+        if (directory.totalWeight == 0L) {
+            return;
+        } else if (directory.totalWeight <= maxUnitWeight && !directory.path.isEmpty()) {
+            units.add(new Unit(new SourceSelection.Slice(directory.path, true), directory.totalWeight));
+        } else {
+            if (directory.ownWeight > 0L) {
+                units.add(new Unit(new SourceSelection.Slice(directory.path, false), directory.ownWeight));
+            }
+            for (Directory child : directory.children.values()) {
+                split(child, maxUnitWeight, units);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,251 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import static com.blackducksoftware.sdk.protex.policy.externalid.ProtexObjectType.PROJECT;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.blackducksoftware.protex.plugin.BuildToolIntegrationException;
+import com.blackducksoftware.protex.plugin.ProtexProject;
+import com.blackducksoftware.protex.plugin.ProtexServerProxy;
+import com.blackducksoftware.protex.plugin.ShardBalance;
+import com.blackducksoftware.protex.plugin.event.AnalysisListener;
+import com.blackducksoftware.sdk.protex.policy.externalid.ExternalNamespace;
+
+/**
+ * Analyzes a large source tree as several shards, each shard is a sub-project of the supplied project (created the
+ * first time it is needed) so the shard BOMs roll up into the parent BOM. Shards are analyzed concurrently, each by a
+ * separate {@code bdstool} invocation.
+ * <p>
+ * Shard assignments are based on the ordering of paths in the tree so they remain largely stable from run to run; the
+ * number of shards should not be changed between runs since it changes every assignment (leaving stale files in the
+ * sub-projects of shards which no longer exist). An existing sub-project whose shard is now empty is analyzed with an
+ * empty directory so its files are not counted twice in the parent BOM.
+ * <p>
+ * The supplied listeners receive the events of every shard, interleaved; listeners which keep state between events
+ * must keep it per {@linkplain com.blackducksoftware.protex.plugin.event.AnalysisEvent#analysis() analysis}.
+ *
+ * @author jgustie
+ */
+public class ShardedAnalyzeTask extends AbstractTask<Void> {
+
+    private final ExternalNamespace namespace;
+
+    private final ProtexProject project;
+
+    private final File directory;
+
+    private final int shards;
+
+    private final int workers;
+
+    private final ShardBalance balance;
+
+    private final boolean force;
+
+    private final Iterable<AnalysisListener> listeners;
+
+    private final FingerprintCache fingerprints;
+
+    private final ExternalIdCache ids;
+
+    public ShardedAnalyzeTask(ProtexServerProxy proxy, ExternalNamespace namespace, ProtexProject project, File directory, int shards,
+            int workers, ShardBalance balance, boolean force, Iterable<AnalysisListener> listeners, FingerprintCache fingerprints,
+            ExternalIdCache ids) {
+        super(proxy);
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be positive: " + shards);
+        } else if (workers < 1) {
+            throw new IllegalArgumentException("workers must be positive: " + workers);
+        }
+        this.namespace = namespace;
+        this.project = project;
+        this.directory = directory;
+        this.shards = shards;
+        this.workers = workers;
+        this.balance = balance;
+        this.force = force;
+        this.listeners = listeners;
+        this.fingerprints = fingerprints;
+        this.ids = ids;
+    }
+
+    @Override
+    protected Void execute() throws BuildToolIntegrationException {
+        final List<String> ignorePatterns = project.getIgnorePatterns() != null ? project.getIgnorePatterns() : Collections.<String> emptyList();
+
+        // Plan the shards before touching the server
+        ShardPlan plan;
+        try {
+            plan = ShardPlan.plan(directory, ignorePatterns, shards, balance);
+        } catch (IOException e) {
+            throw BuildToolIntegrationException.stagingFailed(directory.toString()).initCause(e);
+        }
+
+        // Make sure the parent and the sub-projects of every non-empty shard exist
+        String parentProjectId = lookupProjectId(project.getExternalId());
+        if (parentProjectId == null) {
+            throw BuildToolIntegrationException.noSuchProject(project.getExternalId());
+        }
+        File emptyDirectories = null;
+        try {
+            List<Callable<Void>> analyses = new ArrayList<Callable<Void>>(plan.size());
+            for (int shard = 0; shard < plan.size(); ++shard) {
+                if (!plan.slices(shard).isEmpty()) {
+                    String subProjectId = ensureSubProject(parentProjectId, shard, plan.size(), ignorePatterns);
+                    SourceSelection slices = new SourceSelection(directory, plan.slices(shard), ignorePatterns);
+                    analyses.add(new AnalyzeTask(proxy(), new Constant(subProjectId), slices, force, listeners, fingerprints));
+                } else {
+                    // A shard which had files on an earlier run still has them, analyze nothing so they are removed
+                    String staleProjectId = lookupProjectId(subProjectExternalId(shard));
+                    if (staleProjectId != null) {
+                        if (emptyDirectories == null) {
+                            emptyDirectories = createEmptyDirectories();
+                        }
+                        File empty = new File(emptyDirectories, "shard-" + (shard + 1));
+                        empty.mkdir();
+                        analyses.add(new AnalyzeTask(proxy(), new Constant(staleProjectId), Collections.singleton(empty),
+                                Collections.<String> emptySet(), Collections.<String> emptySet(), ignorePatterns, force, listeners, fingerprints));
+                    }
+                }
+            }
+            analyze(analyses);
+        } finally {
+            if (emptyDirectories != null) {
+                for (File empty : emptyDirectories.listFiles()) {
+                    empty.delete();
+                }
+                emptyDirectories.delete();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Analyzes the shards, waiting for all of them before reporting the first failure.
+     */
+    private void analyze(List<Callable<Void>> analyses) throws BuildToolIntegrationException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, Math.max(analyses.size(), 1)), new DaemonThreadFactory("bdstool-shard-"));
+        try {
+            List<Future<Void>> results = executor.invokeAll(analyses);
+            BuildToolIntegrationException failure = null;
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof BuildToolIntegrationException ? (BuildToolIntegrationException) e.getCause()
+                                : BuildToolIntegrationException.unknownException(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw BuildToolIntegrationException.remoteClientStopped().initCause(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a temporary directory to hold the empty directories analyzed in place of empty shards.
+     */
+    private File createEmptyDirectories() throws BuildToolIntegrationException {
+        File parent = new File(System.getProperty("java.io.tmpdir"), "bdstool");
+        parent.mkdirs();
+        try {
+            return Files.createTempDirectory(parent.toPath(), "empty-").toFile();
+        } catch (IOException e) {
+            throw BuildToolIntegrationException.stagingFailed(directory.toString()).initCause(e);
+        }
+    }
+
+    private String subProjectExternalId(int shard) {
+        return project.getExternalId() + "/shard-" + (shard + 1);
+    }
+
+    /**
+     * Returns the project identifier of a shard, creating the sub-project if it does not exist yet.
+     */
+    private String ensureSubProject(String parentProjectId, int shard, int shardCount, List<String> ignorePatterns)
+            throws BuildToolIntegrationException {
+        ProtexProject subProject = new ProtexProject();
+        subProject.setExternalId(subProjectExternalId(shard));
+        String subProjectId = lookupProjectId(subProject.getExternalId());
+        if (subProjectId == null) {
+            subProject.setName(String.format("%s [shard %d/%d]", project.getName() != null ? project.getName() : project.getExternalId(),
+                    shard + 1, shardCount));
+            subProject.setDescription(project.getDescription());
+            subProject.setAnalysisSourceRepository(project.getAnalysisSourceRepository());
+            subProject.setAnalysisSourceHostname(project.getAnalysisSourceHostname());
+            subProject.setAnalysisSourcePath(project.getAnalysisSourcePath());
+            subProject.setLicenseCategory(project.getLicenseCategory());
+            subProject.setProjectUsers(project.getProjectUsers());
+            subProject.setRapidIdEnabled(project.getRapidIdEnabled());
+            subProject.setIgnorePatterns(ignorePatterns);
+            new CreateProjectTask(proxy(), subProject, namespace, ids).call();
+            subProjectId = subProject.getProjectId();
+            new AddSubProjectTask(proxy(), parentProjectId, subProjectId).call();
+        }
+        return subProjectId;
+    }
+
+    /**
+     * Looks up a project identifier, confirming a cached mapping so a deleted project is never analyzed.
+     */
+    private String lookupProjectId(String externalId) throws BuildToolIntegrationException {
+        return new LookupIdTask(proxy(), namespace.getExternalNamespaceKey(), PROJECT, externalId, ids, true).call();
+    }
+
+    /**
+     * A project identifier which is already known.
+     */
+    private static final class Constant implements Callable<String> {
+        private final String value;
+
+        private Constant(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String call() {
+            return value;
+        }
+    }
+
+}
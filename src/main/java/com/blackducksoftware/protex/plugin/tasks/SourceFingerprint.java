@@ -0,0 +1,156 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A manifest of the files selected for analysis. Each file is recorded with its size and either its modification time
+ * or a digest of its contents; the manifest itself is summarized by a single digest which can be compared to
+ * the digest of a previous analysis to determine if anything has changed.
+ * <p>
+ * Directories are walked (and files hashed) in parallel. Paths in the manifest are relative to the names of the
+ * directories in the {@linkplain SourceSelection selection} so the same files always produce the same manifest.
+ *
+ * @author jgustie
+ */
+final class SourceFingerprint {
+
+    /**
+     * The manifest entries keyed by path.
+     */
+    private final SortedMap<String, String> entries;
+
+    /**
+     * The digest of the manifest entries.
+     */
+    private final String digest;
+
+    private SourceFingerprint(SortedMap<String, String> entries) {
+        this.entries = entries;
+        this.digest = digest(entries);
+    }
+
+    /**
+     * Computes the fingerprint of the selected files. Each file is also passed to the supplied visitor so other
+     * statistics can be gathered from the same walk.
+     */
+    static SourceFingerprint compute(SourceSelection selection, final boolean hashContents, final SourceSelection.Visitor visitor)
+            throws IOException {
+        final ConcurrentSkipListMap<String, String> entries = new ConcurrentSkipListMap<String, String>();
+        selection.walk(new SourceSelection.Visitor() {
+            @Override
+            public void visitFile(Path file, String path, BasicFileAttributes attrs) throws IOException {
+                entries.put(path, entry(file, attrs, hashContents));
+                visitor.visitFile(file, path, attrs);
+            }
+        });
+        return new SourceFingerprint(entries);
+    }
+
+    /**
+     * Returns the digest summarizing the entire manifest.
+     */
+    String digest() {
+        return digest;
+    }
+
+    /**
+     * Returns the number of files in the manifest.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the manifest, one file per line.
+     */
+    void write(Writer out) throws IOException {
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            out.write(entry.getValue());
+            out.write('\t');
+            out.write(entry.getKey());
+            out.write('\n');
+        }
+    }
+
+    private static String entry(Path file, BasicFileAttributes attrs, boolean hashContents) throws IOException {
+        if (attrs.isSymbolicLink()) {
+            return "link\t" + Files.readSymbolicLink(file);
+        } else if (hashContents) {
+            // The modification time is irrelevant (and differs between checkouts) if we have the contents
+            return attrs.size() + "\t" + hash(file);
+        } else {
+            return attrs.size() + "\t" + attrs.lastModifiedTime().toMillis();
+        }
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest = sha1();
+        InputStream in = Files.newInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return String.format("%040x", new BigInteger(1, digest.digest()));
+    }
+
+    private static String digest(SortedMap<String, String> entries) {
+        MessageDigest digest = sha1();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            digest.update(entry.getKey().getBytes(UTF_8));
+            digest.update((byte) 0);
+            digest.update(entry.getValue().getBytes(UTF_8));
+            digest.update((byte) '\n');
+        }
+        return String.format("%040x", new BigInteger(1, digest.digest()));
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required", e);
+        }
+    }
+
+}
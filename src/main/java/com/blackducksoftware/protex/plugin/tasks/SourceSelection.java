@@ -0,0 +1,388 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The files of one or more source directories selected for analysis. Include and exclude patterns are "glob" syntax
+ * matched against paths relative to each directory, an empty collection of includes matches everything; ignore patterns
+ * use the Protex syntax described by {@link IgnoreMatcher}. Excluded and ignored directories are pruned without being
+ * read. Entries which cannot be read (or vanish while the directories are being walked) are skipped, only the source
+ * directories themselves must be readable.
+ * <p>
+ * Each directory is identified by a name (usually the name of the directory itself) which is unique within the
+ * selection. When there are several directories, selected files are identified by that name followed by their relative
+ * path using forward slashes; the files of a single directory are identified by their relative path alone.
+ * <p>
+ * A selection may also be limited to {@linkplain Slice slices} of a single directory, in which case only those parts
+ * of the tree are walked; files keep their paths relative to the directory.
+ *
+ * @author jgustie
+ */
+final class SourceSelection {
+
+    /**
+     * Receives the selected files, possibly from several threads at once.
+     */
+    interface Visitor {
+        void visitFile(Path file, String path, BasicFileAttributes attrs) throws IOException;
+    }
+
+    /**
+     * A part of a single source directory: a whole sub-tree, or only the files directly inside a directory.
+     */
+    static final class Slice {
+        private final String path;
+
+        private final boolean recursive;
+
+        /**
+         * Creates a slice from a relative path using forward slashes, the empty path is the source directory itself.
+         */
+        Slice(String path, boolean recursive) {
+            this.path = path;
+            this.recursive = recursive;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        boolean isRecursive() {
+            return recursive;
+        }
+
+        @Override
+        public String toString() {
+            return path.isEmpty() ? (recursive ? "**" : "*") : path + (recursive ? "/**" : "/*");
+        }
+    }
+
+    /**
+     * The pool used to walk directories, lazily initialized.
+     */
+    private static ForkJoinPool pool;
+
+    private final Collection<File> directories;
+
+    private final List<String> names;
+
+    private final Collection<String> includePatterns;
+
+    private final Collection<String> excludePatterns;
+
+    private final Collection<String> ignorePatterns;
+
+    private final List<PathMatcher> includes;
+
+    private final List<PathMatcher> excludes;
+
+    private final IgnoreMatcher ignored;
+
+    /**
+     * The slices of the single directory to walk, {@code null} to walk every directory completely.
+     */
+    private final List<Slice> slices;
+
+    SourceSelection(Collection<File> directories, Collection<String> includes, Collection<String> excludes, Collection<String> ignorePatterns) {
+        this(directories, includes, excludes, ignorePatterns, null);
+    }
+
+    /**
+     * Creates a selection of the files in the supplied slices of a single directory.
+     */
+    SourceSelection(File directory, List<Slice> slices, Collection<String> ignorePatterns) {
+        this(Collections.singleton(directory), Collections.<String> emptySet(), Collections.<String> emptySet(), ignorePatterns, slices);
+    }
+
+    private SourceSelection(Collection<File> directories, Collection<String> includes, Collection<String> excludes, Collection<String> ignorePatterns,
+            List<Slice> slices) {
+        this.directories = directories;
+        this.names = names(directories);
+        this.includePatterns = includes;
+        this.excludePatterns = excludes;
+        this.ignorePatterns = ignorePatterns;
+        this.includes = matchers(includes);
+        this.excludes = matchers(excludes);
+        this.ignored = IgnoreMatcher.compile(ignorePatterns);
+        this.slices = slices;
+    }
+
+    Collection<File> getDirectories() {
+        return directories;
+    }
+
+    /**
+     * Returns the unique names of the directories, in the same order.
+     */
+    List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * Returns the prefix of the paths of the files selected from the directory at the specified index: the name of
+     * the directory when there are several directories, otherwise nothing.
+     */
+    String prefix(int index) {
+        return directories.size() > 1 ? names.get(index) + "/" : "";
+    }
+
+    /**
+     * Checks to see if every file of a single directory is selected.
+     */
+    boolean isSingleDirectory() {
+        return directories.size() == 1 && includes.isEmpty() && excludes.isEmpty() && ignored.isEmpty() && slices == null;
+    }
+
+    /**
+     * Returns a description of the patterns (and slices) which is independent of their order.
+     */
+    String describePatterns() {
+        String description = sorted(includePatterns) + "\n" + sorted(excludePatterns) + "\n" + sorted(ignorePatterns);
+        if (slices != null) {
+            List<String> sliceDescriptions = new ArrayList<String>(slices.size());
+            for (Slice slice : slices) {
+                sliceDescriptions.add(slice.toString());
+            }
+            description += "\n" + sorted(sliceDescriptions);
+        }
+        return description;
+    }
+
+    /**
+     * Visits each selected file. Directories are walked in parallel and symbolic links are not followed (links are
+     * visited as files).
+     */
+    void walk(Visitor visitor) throws IOException {
+        final List<Walker> walkers = new ArrayList<Walker>(directories.size());
+        int index = 0;
+        for (File directory : directories) {
+            Path source = directory.getAbsoluteFile().toPath();
+            if (!Files.isDirectory(source)) {
+                throw new IOException("not a directory: " + source);
+            }
+            if (slices == null) {
+                walkers.add(new Walker(this, visitor, source, source, prefix(index++), ignored.root(), true));
+            } else {
+                for (Slice slice : slices) {
+                    // Start at the slice, matching the ignore patterns against the directories leading up to it
+                    Path start = source;
+                    IgnoreMatcher.State state = ignored.root();
+                    if (!slice.path.isEmpty()) {
+                        for (String name : slice.path.split("/")) {
+                            start = start.resolve(name);
+                            state = state.step(name).enter();
+                        }
+                    }
+                    walkers.add(new Walker(this, visitor, source, start, prefix(index), state, slice.recursive));
+                }
+                index++;
+            }
+        }
+
+        try {
+            pool().invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    invokeAll(walkers);
+                }
+            });
+        } catch (WalkFailure e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Visits the children of a single directory, forking a new walker for each selected sub-directory.
+     */
+    private static final class Walker extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient SourceSelection selection;
+
+        private final transient Visitor visitor;
+
+        private final transient Path source;
+
+        private final transient Path directory;
+
+        private final String prefix;
+
+        private final transient IgnoreMatcher.State state;
+
+        /**
+         * Flag indicating sub-directories are walked as well, otherwise only the files directly inside are visited.
+         */
+        private final boolean recursive;
+
+        private Walker(SourceSelection selection, Visitor visitor, Path source, Path directory, String prefix, IgnoreMatcher.State state,
+                boolean recursive) {
+            this.selection = selection;
+            this.visitor = visitor;
+            this.source = source;
+            this.directory = directory;
+            this.prefix = prefix;
+            this.state = state;
+            this.recursive = recursive;
+        }
+
+        @Override
+        protected void compute() {
+            List<Walker> subdirectories = new ArrayList<Walker>();
+            try {
+                DirectoryStream<Path> children = Files.newDirectoryStream(directory);
+                try {
+                    for (Path child : children) {
+                        visit(child, subdirectories);
+                    }
+                } catch (DirectoryIteratorException e) {
+                    // Keep the children we have already seen, the rest of the directory is skipped
+                } finally {
+                    children.close();
+                }
+            } catch (IOException e) {
+                // An unreadable sub-directory is skipped, but an unreadable source directory must not look empty
+                if (directory == source) {
+                    throw new WalkFailure(e);
+                }
+            }
+            invokeAll(subdirectories);
+        }
+
+        private void visit(Path child, List<Walker> subdirectories) {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                return;
+            }
+
+            Path relative = source.relativize(child);
+            IgnoreMatcher.State childState = state.step(child.getFileName().toString());
+            if (attrs.isDirectory()) {
+                if (recursive && !childState.isIgnored(true) && !matchesAny(selection.excludes, relative)) {
+                    subdirectories.add(new Walker(selection, visitor, source, child, prefix, childState, true));
+                }
+            } else if ((attrs.isRegularFile() || attrs.isSymbolicLink())
+                    && !childState.isIgnored(false)
+                    && (selection.includes.isEmpty() || matchesAny(selection.includes, relative))
+                    && !matchesAny(selection.excludes, relative)) {
+                try {
+                    visitor.visitFile(child, prefix + relative.toString().replace(File.separatorChar, '/'), attrs);
+                } catch (NoSuchFileException e) {
+                    // The file was deleted after it was listed
+                } catch (IOException e) {
+                    throw new WalkFailure(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Carries an I/O failure out of the fork/join pool.
+     */
+    private static final class WalkFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private WalkFailure(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    private static List<PathMatcher> matchers(Collection<String> patterns) {
+        List<PathMatcher> matchers = new ArrayList<PathMatcher>(patterns.size());
+        for (String pattern : patterns) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+        return matchers;
+    }
+
+    private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a unique name for each directory, a numeric suffix is added to repeated names.
+     */
+    private static List<String> names(Collection<File> directories) {
+        List<String> names = new ArrayList<String>(directories.size());
+        Set<String> usedNames = new HashSet<String>();
+        for (File directory : directories) {
+            Path source = directory.getAbsoluteFile().toPath();
+            String name = source.getFileName() != null ? source.getFileName().toString() : "root";
+            String uniqueName = name;
+            for (int i = 2; !usedNames.add(uniqueName); ++i) {
+                uniqueName = name + "-" + i;
+            }
+            names.add(uniqueName);
+        }
+        return names;
+    }
+
+    private static List<String> sorted(Collection<String> patterns) {
+        List<String> result = new ArrayList<String>(patterns);
+        Collections.sort(result);
+        return result;
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            // Worker threads are daemons, the pool never needs to be shut down
+            pool = new ForkJoinPool();
+        }
+        return pool;
+    }
+
+}
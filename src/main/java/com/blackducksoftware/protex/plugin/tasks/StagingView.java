@@ -0,0 +1,200 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+
+/**
+ * A single directory presenting the selected files of several source directories, used to analyze multiple
+ * directories (or a pruned directory) in a single {@code bdstool} invocation. When there are several source
+ * directories each appears as a sub-directory named after it containing links to the selected files; the selected
+ * files of a single directory are linked directly into the staging directory so the paths seen by the server do not
+ * change. Hard links are used when possible, falling back to copies; symbolic links are not used since they would be
+ * analyzed as links rather than the files they point to.
+ * <p>
+ * The staging directory is created in a hidden directory next to the first source directory so it is (usually) on the
+ * same file system as the sources and hard links work, the temporary directory is only used when that is not possible.
+ * <p>
+ * When every file of a single directory is selected the directory is used as is.
+ *
+ * @author jgustie
+ */
+final class StagingView {
+
+    /**
+     * The name of the hidden directory next to the sources used for staging.
+     */
+    private static final String STAGING_DIRECTORY_NAME = ".bdstool-staging";
+
+    /**
+     * The directory to analyze.
+     */
+    private final File directory;
+
+    /**
+     * The staging directory to delete, {@code null} if nothing was staged.
+     */
+    private final Path staging;
+
+    private StagingView(File directory, Path staging) {
+        this.directory = directory;
+        this.staging = staging;
+    }
+
+    /**
+     * Creates a view of the selected files.
+     */
+    static StagingView create(SourceSelection selection) throws IOException {
+        if (selection.isSingleDirectory()) {
+            return new StagingView(selection.getDirectories().iterator().next(), null);
+        }
+
+        final Path staging = Files.createTempDirectory(stagingParent(selection.getDirectories()).toPath(), "staging-");
+        try {
+            for (int index = 0; index < selection.getNames().size(); ++index) {
+                Files.createDirectories(staging.resolve(selection.prefix(index)));
+            }
+            selection.walk(new Linker(staging));
+            return new StagingView(staging.toFile(), staging);
+        } catch (IOException e) {
+            delete(staging);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the directory to create the staging directory in: a hidden sibling of the first source directory unless
+     * it would be inside one of the source directories (and therefore staged itself) or cannot be created.
+     */
+    private static File stagingParent(Collection<File> directories) {
+        File parent = directories.iterator().next().getAbsoluteFile().getParentFile();
+        if (parent != null && !isWithinAny(parent, directories)) {
+            File stagingParent = new File(parent, STAGING_DIRECTORY_NAME);
+            if (stagingParent.isDirectory() || stagingParent.mkdir()) {
+                return stagingParent;
+            }
+        }
+        File stagingParent = new File(System.getProperty("java.io.tmpdir"), "bdstool");
+        stagingParent.mkdirs();
+        return stagingParent;
+    }
+
+    private static boolean isWithinAny(File file, Collection<File> directories) {
+        Path path = file.toPath().normalize();
+        for (File directory : directories) {
+            if (path.startsWith(directory.getAbsoluteFile().toPath().normalize())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the directory to analyze.
+     */
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Removes the staged links, the source files are not affected.
+     */
+    void close() {
+        if (staging != null) {
+            try {
+                delete(staging);
+            } catch (IOException ignored) {
+                // Best effort, the staging directory only contains links
+            }
+        }
+    }
+
+    /**
+     * Mirrors the selected files using links.
+     */
+    private static final class Linker implements SourceSelection.Visitor {
+        private final Path staging;
+
+        /**
+         * Flag indicating hard links have failed, so we don't keep trying (e.g. across file systems).
+         */
+        private volatile boolean hardLinksFailed;
+
+        private Linker(Path staging) {
+            this.staging = staging;
+        }
+
+        @Override
+        public void visitFile(Path file, String path, BasicFileAttributes attrs) throws IOException {
+            Path link = staging.resolve(path);
+            Files.createDirectories(link.getParent());
+            if (!hardLinksFailed) {
+                try {
+                    Files.createLink(link, file);
+                    return;
+                } catch (NoSuchFileException e) {
+                    // The file is gone, not the ability to link it
+                    throw e;
+                } catch (IOException e) {
+                    hardLinksFailed = true;
+                } catch (UnsupportedOperationException e) {
+                    hardLinksFailed = true;
+                }
+            }
+            Files.copy(file, link, LinkOption.NOFOLLOW_LINKS);
+        }
+    }
+
+    /**
+     * Recursively deletes a directory without following links.
+     */
+    private static void delete(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
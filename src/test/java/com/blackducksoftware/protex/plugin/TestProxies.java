@@ -0,0 +1,49 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin;
+
+/**
+ * Access to the shared SDK helpers of the session registry for tests outside of this package.
+ *
+ * @author jgustie
+ */
+public final class TestProxies {
+
+    private TestProxies() {
+    }
+
+    /**
+     * Returns the proxy services connected to the supplied server share. The lease is released immediately, the proxy
+     * remains shared until it has been idle for the registry's idle timeout.
+     */
+    public static ProtexServerProxy shared(ProtexServer server) {
+        SessionRegistry.Lease lease = SessionRegistry.acquire(server);
+        try {
+            return lease.getProxy();
+        } finally {
+            lease.close();
+        }
+    }
+
+}
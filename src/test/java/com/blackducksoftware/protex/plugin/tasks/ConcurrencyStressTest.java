@@ -0,0 +1,323 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import static com.blackducksoftware.sdk.protex.policy.externalid.ProtexObjectType.PROJECT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.blackducksoftware.protex.plugin.BuildToolIntegrationService;
+import com.blackducksoftware.protex.plugin.BuildToolIntegrationServiceImpl;
+import com.blackducksoftware.protex.plugin.ProtexServer;
+import com.blackducksoftware.protex.plugin.ProtexServerProxy;
+import com.blackducksoftware.protex.plugin.TestProxies;
+import com.blackducksoftware.protex.plugin.event.AbstractAnalysisListener;
+import com.blackducksoftware.protex.plugin.event.AnalysisEvent;
+import com.blackducksoftware.protex.plugin.event.AnalysisListener;
+import com.blackducksoftware.sdk.protex.policy.externalid.ExternalNamespace;
+import com.blackducksoftware.sdk.protex.project.ProjectApi;
+
+/**
+ * Shares a single service (and the SDK helper behind it) between many threads, the way parallel module builds do.
+ * Nothing here talks to a server: lookups are answered by a cache populated up front and analyses are skipped as
+ * unchanged by a fingerprint cache populated up front, so the tests run anywhere.
+ *
+ * @author jgustie
+ */
+public class ConcurrencyStressTest {
+
+    private static final int THREADS = 16;
+
+    private static final int ROUNDS = 50;
+
+    private static final int PROJECTS = 100;
+
+    private static final String NAMESPACE_KEY = "stress";
+
+    private static ProtexServer server() {
+        ProtexServer server = new ProtexServer("secret");
+        server.setServerUrl("http://localhost:1/");
+        server.setUsername("stress@example.com");
+        return server;
+    }
+
+    private static BuildToolIntegrationService service(ProtexServer server, ExternalIdCache ids) {
+        ExternalNamespace namespace = new ExternalNamespace();
+        namespace.setExternalNamespaceKey(NAMESPACE_KEY);
+        BuildToolIntegrationService service = BuildToolIntegrationServiceImpl.newInstance(server, namespace);
+        service.register(ids);
+        return service;
+    }
+
+    private static ExternalIdCache projectIds(ProtexServer server) {
+        ExternalIdCache ids = new ExternalIdCache();
+        for (int i = 0; i < PROJECTS; ++i) {
+            ids.put(server.getServerUrl(), NAMESPACE_KEY, PROJECT, "project-" + i, "id-" + i);
+        }
+        return ids;
+    }
+
+    @Test
+    public void lookupsWhileRegistering() throws Exception {
+        final ProtexServer server = server();
+        final BuildToolIntegrationService service = service(server, projectIds(server));
+        try {
+            final AtomicInteger thread = new AtomicInteger();
+            concurrently(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    int offset = thread.getAndIncrement();
+                    for (int round = 0; round < ROUNDS; ++round) {
+                        service.register(new AbstractAnalysisListener() {
+                        });
+
+                        int project = (offset + round) % PROJECTS;
+                        assertEquals("id-" + project, service.lookupProjectId("project-" + project));
+
+                        List<String> externalIds = new ArrayList<String>();
+                        for (int i = 0; i < 10; ++i) {
+                            externalIds.add("project-" + ((project + i) % PROJECTS));
+                        }
+                        Map<String, String> projectIds = service.lookupProjectIds(externalIds, 4);
+                        assertEquals(externalIds, new ArrayList<String>(projectIds.keySet()));
+                        for (Map.Entry<String, String> entry : projectIds.entrySet()) {
+                            assertEquals(entry.getKey().replace("project-", "id-"), entry.getValue());
+                        }
+                    }
+                    return null;
+                }
+            });
+        } finally {
+            service.close();
+        }
+    }
+
+    @Test
+    public void portsAreCreatedOnce() throws Exception {
+        final ProtexServer server = server();
+        final BuildToolIntegrationService service = service(server, projectIds(server));
+        try {
+            // Services connected to the same server as the same user share one proxy, whichever thread asks first
+            service.lookupProjectId("project-0");
+            final ProtexServerProxy proxy = TestProxies.shared(server);
+            final List<ProjectApi> ports = Collections.synchronizedList(new ArrayList<ProjectApi>());
+            concurrently(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    service.warmUp();
+                    assertSame(proxy, TestProxies.shared(server()));
+                    ports.add(proxy.getProjectApi());
+                    return null;
+                }
+            });
+            assertEquals(THREADS, ports.size());
+            for (ProjectApi port : ports) {
+                assertSame(ports.get(0), port);
+            }
+        } finally {
+            service.close();
+        }
+    }
+
+    @Test
+    public void analysesDispatchToListenersRegisteredConcurrently() throws Exception {
+        final ProtexServer server = server();
+        final BuildToolIntegrationService service = service(server, projectIds(server));
+        final File directory = sourceTree();
+        try {
+            // Record the tree as analyzed so every analysis is skipped without running bdstool
+            final ProtexServerProxy proxy = TestProxies.shared(server);
+            final FingerprintCache fingerprints = new FingerprintCache(FingerprintStores.inMemory(), false);
+            final String projectId = service.lookupProjectId("project-0");
+            SourceSelection selection = new SourceSelection(Collections.singleton(directory), Collections.<String> emptySet(),
+                    Collections.<String> emptySet(), Collections.<String> emptySet());
+            SourceFingerprint fingerprint = SourceFingerprint.compute(selection, false, new SourceSelection.Visitor() {
+                @Override
+                public void visitFile(Path file, String path, BasicFileAttributes attrs) {
+                }
+            });
+            fingerprints.record(FingerprintCache.key(proxy.getServerUrl(), projectId), selection, fingerprint, projectId);
+
+            // Listeners are registered while other threads are dispatching to them
+            final Collection<AnalysisListener> listeners = new CopyOnWriteArrayList<AnalysisListener>();
+            final RecordingListener everything = new RecordingListener();
+            listeners.add(everything);
+            final List<RecordingListener> registered = Collections.synchronizedList(new ArrayList<RecordingListener>());
+            concurrently(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int round = 0; round < ROUNDS; ++round) {
+                        RecordingListener listener = new RecordingListener();
+                        listeners.add(listener);
+                        registered.add(listener);
+                        new AnalyzeTask(proxy, new Callable<String>() {
+                            @Override
+                            public String call() {
+                                return projectId;
+                            }
+                        }, Collections.singleton(directory), Collections.<String> emptySet(), Collections.<String> emptySet(), false, listeners,
+                                fingerprints).call();
+                    }
+                    return null;
+                }
+            });
+
+            List<String> complete = Arrays.asList("initiated", "succeeded:unchanged");
+
+            // Every analysis was seen by the first listener exactly once, initiated before it succeeded
+            assertEquals(THREADS * ROUNDS, everything.analyses().size());
+            for (List<String> events : everything.analyses().values()) {
+                assertEquals(complete, events);
+            }
+
+            // A listener sees every analysis started after it was registered (at least the one its own thread ran next),
+            // analyses already in flight may only be seen from the event dispatched after it was registered
+            List<String> inFlight = Arrays.asList("succeeded:unchanged");
+            for (RecordingListener listener : registered) {
+                int seen = 0;
+                for (List<String> events : listener.analyses().values()) {
+                    assertTrue(events.toString(), events.equals(complete) || events.equals(inFlight));
+                    seen += events.equals(complete) ? 1 : 0;
+                }
+                assertTrue(seen >= 1);
+            }
+        } finally {
+            service.close();
+            delete(directory);
+        }
+    }
+
+    /**
+     * Records the events of each analysis in order.
+     */
+    private static final class RecordingListener extends AbstractAnalysisListener {
+        private final Map<Object, List<String>> analyses = new IdentityHashMap<Object, List<String>>();
+
+        @Override
+        public synchronized void analysisInitiated(AnalysisEvent event) {
+            events(event).add("initiated");
+        }
+
+        @Override
+        public synchronized void analysisSucceeded(AnalysisEvent event) {
+            events(event).add("succeeded:" + event.status().get(FingerprintCache.SKIPPED));
+        }
+
+        @Override
+        public synchronized void analysisFailed(AnalysisEvent event) {
+            events(event).add("failed");
+        }
+
+        private List<String> events(AnalysisEvent event) {
+            List<String> events = analyses.get(event.analysis());
+            if (events == null) {
+                events = new ArrayList<String>();
+                analyses.put(event.analysis(), events);
+            }
+            return events;
+        }
+
+        synchronized Map<Object, List<String>> analyses() {
+            return new LinkedHashMap<Object, List<String>>(analyses);
+        }
+    }
+
+    /**
+     * Runs the task on every thread at once, rethrowing the first failure.
+     */
+    private static void concurrently(final Callable<Void> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final CyclicBarrier start = new CyclicBarrier(THREADS);
+            List<Future<Void>> results = new ArrayList<Future<Void>>(THREADS);
+            for (int i = 0; i < THREADS; ++i) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        return task.call();
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw new AssertionError(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static File sourceTree() throws IOException {
+        Path directory = Files.createTempDirectory("stress-");
+        for (int i = 0; i < 20; ++i) {
+            Path file = directory.resolve("module-" + (i % 4)).resolve("File" + i + ".java");
+            Files.createDirectories(file.getParent());
+            Files.write(file, ("class File" + i + " {}").getBytes("UTF-8"));
+        }
+        return directory.toFile();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
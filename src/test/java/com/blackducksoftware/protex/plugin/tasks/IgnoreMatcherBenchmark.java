@@ -0,0 +1,154 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link IgnoreMatcher} against a large number of patterns and paths. This is not run as part of the build,
+ * run it by hand with optional arguments for the number of patterns, the number of paths and the number of rounds:
+ *
+ * <pre>
+ * java -cp ... com.blackducksoftware.protex.plugin.tasks.IgnoreMatcherBenchmark 5000 1000000 5
+ * </pre>
+ *
+ * Paths are matched both from the root (as {@link IgnoreMatcher#isIgnored(String, boolean)} does) and incrementally
+ * (as a walk does, stepping each directory once).
+ *
+ * @author jgustie
+ */
+public class IgnoreMatcherBenchmark {
+
+    private static final String[] NAMES = { "src", "main", "java", "test", "lib", "docs", "web", "app", "core", "util" };
+
+    private static final String[] EXTENSIONS = { ".java", ".js", ".class", ".xml", ".txt", ".md", ".json", ".c" };
+
+    public static void main(String[] args) {
+        int patternCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int pathCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Random random = new Random(0L);
+        List<String> patterns = patterns(random, patternCount);
+        List<String[]> paths = paths(random, pathCount);
+
+        long start = System.nanoTime();
+        IgnoreMatcher matcher = IgnoreMatcher.compile(patterns);
+        System.out.printf("compiled %d patterns in %d ms%n", patterns.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        for (int round = 1; round <= rounds; ++round) {
+            start = System.nanoTime();
+            int ignored = 0;
+            for (String[] path : paths) {
+                if (matcher.isIgnored(join(path), false)) {
+                    ignored++;
+                }
+            }
+            long fromRoot = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int ignoredIncrementally = 0;
+            IgnoreMatcher.State[] directories = new IgnoreMatcher.State[4];
+            String[] previous = null;
+            for (String[] path : paths) {
+                // Only step the directories which differ from the previous path, like a walk would
+                int common = 0;
+                while (previous != null && common < path.length - 1 && path[common].equals(previous[common])) {
+                    common++;
+                }
+                IgnoreMatcher.State state = common == 0 ? matcher.root() : directories[common - 1];
+                for (int i = common; i < path.length - 1; ++i) {
+                    state = state.step(path[i]).enter();
+                    directories[i] = state;
+                }
+                if (state.step(path[path.length - 1]).isIgnored(false)) {
+                    ignoredIncrementally++;
+                }
+                previous = path;
+            }
+            long incremental = System.nanoTime() - start;
+
+            System.out.printf("round %d: %d paths, %d ignored; from root %d ms, incremental %d ms (%d ignored)%n", round, paths.size(), ignored,
+                    TimeUnit.NANOSECONDS.toMillis(fromRoot), TimeUnit.NANOSECONDS.toMillis(incremental), ignoredIncrementally);
+        }
+    }
+
+    /**
+     * Generates a mix of literal, suffix, anchored and wildcard patterns.
+     */
+    private static List<String> patterns(Random random, int count) {
+        List<String> patterns = new ArrayList<String>(count);
+        for (int i = 0; i < count; ++i) {
+            switch (i % 5) {
+            case 0:
+                patterns.add("dir" + random.nextInt(100000));
+                break;
+            case 1:
+                patterns.add("*.ext" + random.nextInt(100000));
+                break;
+            case 2:
+                patterns.add("/" + NAMES[random.nextInt(NAMES.length)] + "/gen" + random.nextInt(100000) + "/");
+                break;
+            case 3:
+                patterns.add("tmp" + random.nextInt(100000) + "*.bak");
+                break;
+            default:
+                patterns.add("/**/cache" + random.nextInt(100000) + "?");
+                break;
+            }
+        }
+        // A few patterns which actually match the generated paths
+        patterns.addAll(Arrays.asList("*.class", "node_modules", "/docs/"));
+        return patterns;
+    }
+
+    /**
+     * Generates sorted paths of three directories and a file name.
+     */
+    private static List<String[]> paths(Random random, int count) {
+        List<String[]> paths = new ArrayList<String[]>(count);
+        for (int i = 0; i < count; ++i) {
+            String[] path = new String[4];
+            path[0] = NAMES[(i / 100000) % NAMES.length];
+            path[1] = random.nextInt(50) == 0 ? "node_modules" : NAMES[(i / 10000) % NAMES.length];
+            path[2] = "pkg" + (i / 100);
+            path[3] = "File" + i + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    private static String join(String[] path) {
+        StringBuilder result = new StringBuilder(path[0]);
+        for (int i = 1; i < path.length; ++i) {
+            result.append('/').append(path[i]);
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Protex Plugin Integration
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.protex.plugin.tasks;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link IgnoreMatcher}.
+ *
+ * @author jgustie
+ */
+public class IgnoreMatcherTest {
+
+    private static IgnoreMatcher compile(String... patterns) {
+        return IgnoreMatcher.compile(Arrays.asList(patterns));
+    }
+
+    @Test
+    public void nameMatchesAnywhere() {
+        IgnoreMatcher matcher = compile("node_modules");
+        assertTrue(matcher.isIgnored("node_modules", true));
+        assertTrue(matcher.isIgnored("web/app/node_modules", true));
+        assertTrue(matcher.isIgnored("node_modules", false));
+        assertFalse(matcher.isIgnored("node_modules_old", true));
+        assertFalse(matcher.isIgnored("web/modules", true));
+    }
+
+    @Test
+    public void everythingBelowIgnoredDirectoryIsIgnored() {
+        IgnoreMatcher matcher = compile("node_modules");
+        assertTrue(matcher.isIgnored("node_modules/lodash/index.js", false));
+        assertTrue(matcher.isIgnored("web/node_modules/lodash", true));
+    }
+
+    @Test
+    public void suffix() {
+        IgnoreMatcher matcher = compile("*.class");
+        assertTrue(matcher.isIgnored("Foo.class", false));
+        assertTrue(matcher.isIgnored("com/example/Foo$1.class", false));
+        assertTrue(matcher.isIgnored(".class", false));
+        assertFalse(matcher.isIgnored("com/example/Foo.classpath", false));
+        assertFalse(matcher.isIgnored("com/example/Foo.java", false));
+    }
+
+    @Test
+    public void trailingSlashOnlyMatchesDirectories() {
+        IgnoreMatcher matcher = compile("target/");
+        assertTrue(matcher.isIgnored("target", true));
+        assertTrue(matcher.isIgnored("module/target", true));
+        assertTrue(matcher.isIgnored("module/target/classes/Foo.class", false));
+        assertFalse(matcher.isIgnored("target", false));
+        assertFalse(matcher.isIgnored("module/target", false));
+    }
+
+    @Test
+    public void slashAnchorsToRoot() {
+        IgnoreMatcher matcher = compile("/docs/generated");
+        assertTrue(matcher.isIgnored("docs/generated", true));
+        assertTrue(matcher.isIgnored("docs/generated/index.html", false));
+        assertFalse(matcher.isIgnored("module/docs/generated", true));
+        assertFalse(matcher.isIgnored("docs", true));
+
+        // An embedded slash anchors the pattern as well
+        assertTrue(compile("docs/generated").isIgnored("docs/generated", true));
+        assertFalse(compile("docs/generated").isIgnored("module/docs/generated", true));
+    }
+
+    @Test
+    public void backslashesAreSeparators() {
+        IgnoreMatcher matcher = compile("docs\\generated");
+        assertTrue(matcher.isIgnored("docs/generated", true));
+        assertFalse(matcher.isIgnored("module/docs/generated", true));
+    }
+
+    @Test
+    public void singleCharacterWildcard() {
+        IgnoreMatcher matcher = compile("test?.txt");
+        assertTrue(matcher.isIgnored("test1.txt", false));
+        assertTrue(matcher.isIgnored("a/testX.txt", false));
+        assertFalse(matcher.isIgnored("test.txt", false));
+        assertFalse(matcher.isIgnored("test12.txt", false));
+    }
+
+    @Test
+    public void irregularWildcards() {
+        IgnoreMatcher matcher = compile("build-*-tmp", "*generated*", "a*b*c");
+        assertTrue(matcher.isIgnored("build-123-tmp", true));
+        assertTrue(matcher.isIgnored("src/build--tmp", true));
+        assertFalse(matcher.isIgnored("build-123-tmpx", true));
+        assertTrue(matcher.isIgnored("x/autogenerated-sources", true));
+        assertTrue(matcher.isIgnored("generated", false));
+        assertTrue(matcher.isIgnored("abc", false));
+        assertTrue(matcher.isIgnored("aXXbYYc", false));
+        assertFalse(matcher.isIgnored("ab", false));
+        assertFalse(matcher.isIgnored("acb", false));
+    }
+
+    @Test
+    public void globstar() {
+        IgnoreMatcher matcher = compile("/src/**/gen");
+        assertTrue(matcher.isIgnored("src/gen", true));
+        assertTrue(matcher.isIgnored("src/main/java/gen", true));
+        assertTrue(matcher.isIgnored("src/main/java/gen/Foo.java", false));
+        assertFalse(matcher.isIgnored("lib/gen", true));
+        assertFalse(matcher.isIgnored("src/main/generated", true));
+    }
+
+    @Test
+    public void blankPatternsAreIgnored() {
+        IgnoreMatcher matcher = compile("", "  ", "/", "//");
+        assertTrue(matcher.isEmpty());
+        assertFalse(matcher.isIgnored("anything", true));
+        assertTrue(IgnoreMatcher.NONE.isEmpty());
+        assertFalse(IgnoreMatcher.NONE.isIgnored("anything/at/all", false));
+    }
+
+    @Test
+    public void incrementalMatchingAgreesWithPaths() {
+        IgnoreMatcher matcher = compile("*.log", "/out/", "cache");
+        IgnoreMatcher.State root = matcher.root();
+        IgnoreMatcher.State out = root.step("out");
+        assertTrue(out.isIgnored(true));
+        assertTrue(out.enter().step("anything").isIgnored(false));
+        IgnoreMatcher.State src = root.step("src");
+        assertFalse(src.isIgnored(true));
+        assertFalse(src.enter().step("out").isIgnored(true));
+        assertTrue(src.enter().step("server.log").isIgnored(false));
+        assertTrue(src.enter().step("cache").isIgnored(false));
+    }
+
+    @Test
+    public void manyPatterns() {
+        // Thousands of patterns of each kind, only the ones we plant should match
+        List<String> patterns = new ArrayList<String>();
+        for (int i = 0; i < 2000; ++i) {
+            patterns.add("dir" + i);
+            patterns.add("*.ext" + i);
+            patterns.add("/root" + i + "/sub");
+            patterns.add("pre" + i + "*post");
+        }
+        IgnoreMatcher matcher = IgnoreMatcher.compile(patterns);
+        assertTrue(matcher.isIgnored("a/b/dir1999", true));
+        assertTrue(matcher.isIgnored("a/b/file.ext42", false));
+        assertTrue(matcher.isIgnored("root7/sub", true));
+        assertTrue(matcher.isIgnored("x/pre13middlepost", false));
+        assertFalse(matcher.isIgnored("a/b/dir2000", true));
+        assertFalse(matcher.isIgnored("a/b/file.ext2000", false));
+        assertFalse(matcher.isIgnored("x/root7/sub", true));
+        assertFalse(matcher.isIgnored("x/pre13middle", false));
+    }
+
+}